@@ -0,0 +1,13 @@
+package com.fyh.threadpool.main;
+
+/**
+ * 交给 StretchableThreadPool.blocking 执行的阻塞调用，例如 Thread.sleep、同步 IO、等待锁或远程调用
+ *
+ * @param <T> 返回值类型，不需要返回值时返回 null
+ * @param <E> 阻塞调用抛出的受检异常类型，由 lambda 推断，blocking 原样抛出
+ */
+@FunctionalInterface
+public interface BlockingCall<T, E extends Exception> {
+
+    T call() throws E;
+}
@@ -0,0 +1,86 @@
+package com.fyh.threadpool.main;
+
+/**
+ * 以吞吐量最大为目标的爬山法线程数调节策略，适合 CPU 型与阻塞型任务混合、无法事先确定合适并发数的场景
+ * <p>
+ * 每隔 samplesPerMove 个采样周期取一次平均吞吐量，与上一次调整前的吞吐量比较：吞吐量上升就沿原方向继续调整，
+ * 下降就反向调整；变化在噪声范围 noiseThreshold 以内时减少线程（同样的吞吐量用更少的线程）。
+ * 调整幅度与吞吐量的相对变化成正比，不超过 maxStep。队列里没有排队任务时吞吐量受限于任务到达速度，不增加线程
+ */
+public class HillClimbingSizer implements PoolSizer {
+    private final int samplesPerMove;
+    private final double noiseThreshold;
+    private final int maxStep;
+
+    private double throughputSum;
+    private int samples;
+
+    /**
+     * 上一次调整前测得的吞吐量及当时的目标线程数，还没有测量过时为 -1
+     */
+    private double lastThroughput = -1;
+    private int lastTarget = -1;
+
+    /**
+     * 使用默认参数：每 3 个周期调整一次，吞吐量变化 5% 以内视为噪声，每次最多调整 4 个线程
+     */
+    public HillClimbingSizer() {
+        this(3, 0.05, 4);
+    }
+
+    /**
+     * @param samplesPerMove 每次调整前取平均的采样周期数，越大越不容易受噪声影响，调整也越慢
+     * @param noiseThreshold 吞吐量相对变化不超过该值时视为没有变化
+     * @param maxStep        每次最多增加或减少的线程数
+     */
+    public HillClimbingSizer(int samplesPerMove, double noiseThreshold, int maxStep) {
+        if (samplesPerMove < 1) {
+            throw new IllegalArgumentException("samplesPerMove must be positive: " + samplesPerMove);
+        }
+        if (maxStep < 1) {
+            throw new IllegalArgumentException("maxStep must be positive: " + maxStep);
+        }
+        this.samplesPerMove = samplesPerMove;
+        this.noiseThreshold = noiseThreshold;
+        this.maxStep = maxStep;
+    }
+
+    @Override
+    public int resize(PoolSample sample, int currentTarget, int minThreads, int maxThreads) {
+        throughputSum += sample.getThroughput();
+        if (++samples < samplesPerMove) {
+            return currentTarget;
+        }
+        double throughput = throughputSum / samples;
+        throughputSum = 0;
+        samples = 0;
+
+        boolean backlog = sample.getQueueDepth() > 0;
+        int direction;
+        int step = 1;
+        int moved = lastTarget < 0 ? 0 : currentTarget - lastTarget;
+        if (moved == 0) {
+            // 刚开始或上次没有调整：有排队任务时试探着增加线程，否则试探着减少
+            direction = backlog ? 1 : -1;
+        } else {
+            double change = (throughput - lastThroughput) / Math.max(lastThroughput, 1e-9);
+            if (change > noiseThreshold) {
+                direction = Integer.signum(moved);
+            } else if (change < -noiseThreshold) {
+                direction = -Integer.signum(moved);
+            } else {
+                direction = -1;
+            }
+            if (Math.abs(change) > noiseThreshold) {
+                step = (int) Math.max(1, Math.min(maxStep, Math.round(Math.abs(change) * currentTarget)));
+            }
+        }
+        if (direction > 0 && !backlog) {
+            direction = 0;
+        }
+
+        lastThroughput = throughput;
+        lastTarget = currentTarget;
+        return Math.max(minThreads, Math.min(maxThreads, currentTarget + direction * step));
+    }
+}
@@ -0,0 +1,70 @@
+package com.fyh.threadpool.main;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 所有线程池共用的空闲线程回收线程：工作线程空闲时无限期挂起，不再各自定时醒来判断是否超时，
+ * 由这个线程按各线程池空闲线程栈底的空闲开始时间，在最早的超时时刻醒来回收多余的线程
+ * <p>
+ * 只有线程数超过核心线程数的线程池会登记在这里，回收到核心线程数后移除；没有登记的线程池时回收线程也无限期挂起，
+ * 大量空闲线程池不会产生后台唤醒
+ */
+@Slf4j
+final class IdleReaper implements Runnable {
+    private static final Set<StretchableThreadPool> POOLS = ConcurrentHashMap.newKeySet();
+    private static final Thread THREAD;
+
+    static {
+        THREAD = new Thread(new IdleReaper(), "idle-reaper");
+        THREAD.setDaemon(true);
+        THREAD.start();
+    }
+
+    private IdleReaper() {
+    }
+
+    /**
+     * 线程池线程数超过核心线程数时登记，新登记的线程池唤醒回收线程重新计算下一次醒来的时间
+     */
+    static void register(StretchableThreadPool pool) {
+        if (POOLS.add(pool)) {
+            LockSupport.unpark(THREAD);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long next = Long.MAX_VALUE;
+            long now = System.nanoTime();
+            for (StretchableThreadPool pool : POOLS) {
+                long delay;
+                try {
+                    delay = pool.reapIdleWorkers(now);
+                } catch (RuntimeException e) {
+                    log.warn("idle reaper failed", e);
+                    delay = -1;
+                }
+                if (delay >= 0) {
+                    next = Math.min(next, delay);
+                    continue;
+                }
+                // 移除后再检查一次，移除前登记（add 没有生效）的线程池不会被漏掉
+                POOLS.remove(pool);
+                if (pool.hasSurplusThreads()) {
+                    POOLS.add(pool);
+                    next = 0;
+                }
+            }
+            if (next == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else if (next > 0) {
+                LockSupport.parkNanos(this, next);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.fyh.threadpool.main;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数分桶的耗时直方图（单位纳秒）
+ * <p>
+ * 每个 2 的幂区间再均分为 4 个桶，相对误差不超过 25%。每个工作线程各自持有一份只由自己写入，
+ * 读取时再把所有线程的直方图合并成 {@link Snapshot}，记录时不存在线程间竞争
+ */
+public final class LatencyHistogram {
+    /**
+     * 每个 2 的幂区间细分的桶数为 2^SUB_BITS
+     */
+    private static final int SUB_BITS = 2;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * @param nanos 耗时纳秒数，负数按 0 记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        sum.addAndGet(value);
+    }
+
+    /**
+     * @return 当前数据的只读快照
+     */
+    public Snapshot snapshot() {
+        return Snapshot.merge(Collections.singletonList(this));
+    }
+
+    /**
+     * 把另一份直方图的数据累加进来（线程退出时保留其统计数据）
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        sum.addAndGet(other.sum.get());
+    }
+
+    /**
+     * 把本直方图的数据累加到快照数组中
+     */
+    void addTo(long[] snapshotCounts, long[] snapshotSum) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshotCounts[i] += counts.get(i);
+        }
+        snapshotSum[0] += sum.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return 桶内最大值（包含）
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        long lower = (SUB_COUNT + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * 合并后的只读直方图
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        private final long sum;
+
+        Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.totalCount = total;
+        }
+
+        static Snapshot merge(Iterable<LatencyHistogram> histograms) {
+            long[] counts = new long[BUCKET_COUNT];
+            long[] sum = new long[1];
+            for (LatencyHistogram histogram : histograms) {
+                histogram.addTo(counts, sum);
+            }
+            return new Snapshot(counts, sum[0]);
+        }
+
+        /**
+         * @return 本快照减去较早的快照，即两次快照之间新增的数据（用于按周期统计）
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                diff[i] = Math.max(0, counts[i] - earlier.counts[i]);
+            }
+            return new Snapshot(diff, Math.max(0, sum - earlier.sum));
+        }
+
+        public long getCount() {
+            return totalCount;
+        }
+
+        public long getSumNanos() {
+            return sum;
+        }
+
+        public double getMeanNanos() {
+            return totalCount == 0 ? 0 : (double) sum / totalCount;
+        }
+
+        /**
+         * @param quantile 分位数，取值 [0, 1]，例如 0.99
+         * @return 该分位所在桶的上界纳秒数，没有数据时为 0
+         */
+        public long percentile(double quantile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return bucketUpperBound(counts.length - 1);
+        }
+
+        public long getP50() {
+            return percentile(0.5);
+        }
+
+        public long getP99() {
+            return percentile(0.99);
+        }
+
+        public long getP999() {
+            return percentile(0.999);
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot(count=" + totalCount + ", p50=" + getP50() + "ns, p99=" + getP99()
+                    + "ns, p999=" + getP999() + "ns)";
+        }
+    }
+}
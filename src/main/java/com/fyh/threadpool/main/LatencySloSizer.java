@@ -0,0 +1,113 @@
+package com.fyh.threadpool.main;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以排队等待时间 p99 为目标的 PID 线程数控制器
+ * <p>
+ * 误差为 (本周期排队等待 p99 - 目标) / 目标。误差在死区 deadband 以内时不调整；超出目标时按 PID 输出成比例地增加线程；
+ * 低于目标时只有连续 shrinkHold 个周期都如此且线程利用率低于 lowUtilization 才减少线程，且每次最多减少四分之一。
+ * 扩容快、缩容慢，线程数不会在目标附近来回抖动
+ */
+public class LatencySloSizer implements PoolSizer {
+    /**
+     * 误差的上下限，避免个别极端周期让控制量过大
+     */
+    private static final double MAX_ERROR = 4.0;
+    private static final double MAX_INTEGRAL = 8.0;
+
+    private final long targetNanos;
+    private final double kp;
+    private final double ki;
+    private final double kd;
+    private final double deadband;
+    private final int shrinkHold;
+    private final double lowUtilization;
+
+    private double integral;
+    private double previousError;
+    private int belowTargetIntervals;
+
+    /**
+     * 使用默认参数：kp 0.5，ki 0.1，kd 0.1，死区 20%，连续 3 个周期低于目标且利用率低于 50% 才缩容
+     *
+     * @param targetP99Wait 排队等待时间 p99 的目标
+     * @param unit          targetP99Wait 的时间单位
+     */
+    public LatencySloSizer(long targetP99Wait, TimeUnit unit) {
+        this(targetP99Wait, unit, 0.5, 0.1, 0.1, 0.2, 3, 0.5);
+    }
+
+    /**
+     * @param targetP99Wait  排队等待时间 p99 的目标
+     * @param unit           targetP99Wait 的时间单位
+     * @param kp             比例系数，输出乘以当前线程数即为调整的线程数
+     * @param ki             积分系数
+     * @param kd             微分系数
+     * @param deadband       死区，相对误差绝对值不超过该值时不调整
+     * @param shrinkHold     连续多少个周期低于目标才缩容
+     * @param lowUtilization 线程利用率低于该值才缩容
+     */
+    public LatencySloSizer(long targetP99Wait, TimeUnit unit, double kp, double ki, double kd,
+                           double deadband, int shrinkHold, double lowUtilization) {
+        if (targetP99Wait <= 0) {
+            throw new IllegalArgumentException("targetP99Wait must be positive: " + targetP99Wait);
+        }
+        this.targetNanos = unit.toNanos(targetP99Wait);
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+        this.deadband = deadband;
+        this.shrinkHold = Math.max(1, shrinkHold);
+        this.lowUtilization = lowUtilization;
+    }
+
+    @Override
+    public int resize(PoolSample sample, int currentTarget, int minThreads, int maxThreads) {
+        double error = error(sample);
+        if (Math.abs(error) <= deadband) {
+            // 死区内积分逐渐衰减，防止之前的累积误差在稳定之后把线程数推走
+            integral *= 0.5;
+            previousError = error;
+            belowTargetIntervals = 0;
+            return currentTarget;
+        }
+
+        integral = Math.max(-MAX_INTEGRAL, Math.min(MAX_INTEGRAL, integral + error));
+        double output = kp * error + ki * integral + kd * (error - previousError);
+        previousError = error;
+        int base = Math.max(1, currentTarget);
+
+        if (error > 0) {
+            belowTargetIntervals = 0;
+            if (output <= 0) {
+                return currentTarget;
+            }
+            return currentTarget + Math.max(1, (int) Math.ceil(output * base));
+        }
+
+        // 只有连续多个周期都低于目标且线程空闲较多才缩容
+        if (sample.getUtilization() >= lowUtilization) {
+            belowTargetIntervals = 0;
+            return currentTarget;
+        }
+        if (++belowTargetIntervals < shrinkHold || output >= 0) {
+            return currentTarget;
+        }
+        belowTargetIntervals = 0;
+        int shrink = Math.max(1, Math.min((int) Math.ceil(-output * base), base / 4));
+        return currentTarget - shrink;
+    }
+
+    /**
+     * 相对误差；本周期没有任务开始执行但队列里有任务时，说明线程全部被占住，按最大误差处理
+     */
+    private double error(PoolSample sample) {
+        LatencyHistogram.Snapshot wait = sample.getQueueWaitTime();
+        if (wait.getCount() == 0) {
+            return sample.getQueueDepth() > 0 ? MAX_ERROR : -1.0;
+        }
+        double error = (double) (wait.getP99() - targetNanos) / targetNanos;
+        return Math.max(-1.0, Math.min(MAX_ERROR, error));
+    }
+}
@@ -0,0 +1,69 @@
+package com.fyh.threadpool.main;
+
+/**
+ * 线程池事件监听器，通过 StretchableThreadPool.setPoolEventListener 注册，默认不注册
+ * <p>
+ * 任务相关事件按采样间隔抽样回调，线程创建与退出事件每次都会回调。
+ * 回调在提交任务或执行任务的线程上同步执行，实现应当足够轻量
+ */
+public interface PoolEventListener {
+
+    /**
+     * 任务被提交
+     */
+    default void onWorkSubmitted(Runnable work) {
+    }
+
+    /**
+     * 队列已满，任务被拒绝或丢弃（CALLER_RAN 不回调）
+     *
+     * @param status REJECTED、DISCARDED，或者 DISCARDED_OLDEST（此时 work 已入队，被丢弃的是队列中最早的任务）
+     */
+    default void onWorkRejected(Runnable work, SubmitStatus status) {
+    }
+
+    /**
+     * 任务即将在当前线程执行
+     */
+    default void beforeWork(Thread thread, Runnable work) {
+    }
+
+    /**
+     * 任务执行结束，与同一任务的 beforeWork 一起被采样
+     *
+     * @param failure 任务抛出的异常，正常结束时为 null
+     */
+    default void afterWork(Thread thread, Runnable work, Throwable failure) {
+    }
+
+    /**
+     * 线程池创建了一个新线程
+     */
+    default void onThreadCreated(Thread thread) {
+    }
+
+    /**
+     * 线程池中的一个线程退出
+     */
+    default void onThreadTerminated(Thread thread) {
+    }
+
+    /**
+     * 卡顿检测（setStallWatchdog）发现一个任务执行超过阈值，每个任务只回调一次，在检测线程上执行
+     *
+     * @param thread       执行该任务的线程
+     * @param runningNanos 任务已经执行的时间
+     * @param stackTrace   发现时该线程的调用栈
+     */
+    default void onWorkStalled(Thread thread, long runningNanos, StackTraceElement[] stackTrace) {
+    }
+
+    /**
+     * 卡顿检测发现所有线程都处于 BLOCKED / WAITING 状态而排队任务仍在增加，在检测线程上执行
+     *
+     * @param stuckThreads 卡住的线程数
+     * @param queueDepth   排队任务数
+     */
+    default void onPoolStalled(int stuckThreads, int queueDepth) {
+    }
+}
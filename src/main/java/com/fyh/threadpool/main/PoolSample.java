@@ -0,0 +1,51 @@
+package com.fyh.threadpool.main;
+
+import lombok.Value;
+
+/**
+ * 线程数控制器每个采样周期得到的数据，交给 {@link PoolSizer} 计算新的目标线程数
+ */
+@Value
+public class PoolSample {
+    /**
+     * 本周期的实际长度（纳秒）
+     */
+    long intervalNanos;
+
+    /**
+     * 采样时的线程数
+     */
+    int threadCount;
+
+    /**
+     * 采样时的排队任务数
+     */
+    int queueDepth;
+
+    /**
+     * 本周期内执行结束的任务数（包括失败的）
+     */
+    long completedCount;
+
+    /**
+     * 本周期内开始执行的任务的排队等待时间
+     */
+    LatencyHistogram.Snapshot queueWaitTime;
+
+    /**
+     * 本周期内执行结束的任务的执行耗时
+     */
+    LatencyHistogram.Snapshot executionTime;
+
+    /**
+     * 线程利用率：本周期任务执行总耗时 / (周期长度 * 线程数)，取值 [0, 1]
+     */
+    double utilization;
+
+    /**
+     * @return 本周期的吞吐量（每秒执行结束的任务数）
+     */
+    public double getThroughput() {
+        return intervalNanos <= 0 ? 0 : completedCount * 1e9 / intervalNanos;
+    }
+}
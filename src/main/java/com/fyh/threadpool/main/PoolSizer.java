@@ -0,0 +1,21 @@
+package com.fyh.threadpool.main;
+
+/**
+ * 线程数调节策略，由 StretchableThreadPool.setPoolSizer 注册后每个采样周期调用一次
+ * <p>
+ * 注册后线程池不再按排队任务数扩容，而是把线程数维持在返回的目标值：线程数低于目标时立即创建线程，
+ * 高于目标时多出的线程执行完手上的任务后退出
+ */
+public interface PoolSizer {
+
+    /**
+     * 只由控制线程调用，实现类不需要考虑线程安全
+     *
+     * @param sample        本周期的采样数据
+     * @param currentTarget 当前的目标线程数
+     * @param minThreads    目标线程数下限（核心线程数）
+     * @param maxThreads    目标线程数上限（最大线程数）
+     * @return 新的目标线程数，超出 [minThreads, maxThreads] 的部分会被截断
+     */
+    int resize(PoolSample sample, int currentTarget, int minThreads, int maxThreads);
+}
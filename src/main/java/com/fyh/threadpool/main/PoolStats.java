@@ -0,0 +1,64 @@
+package com.fyh.threadpool.main;
+
+import lombok.Value;
+
+/**
+ * 线程池运行状态快照，由 StretchableThreadPool.getStats() 生成
+ */
+@Value
+public class PoolStats {
+    /**
+     * 已提交的任务数
+     */
+    long submittedCount;
+
+    /**
+     * 正常执行结束的任务数
+     */
+    long completedCount;
+
+    /**
+     * 执行时抛出异常的任务数
+     */
+    long failedCount;
+
+    /**
+     * 队列已满时被拒绝或丢弃的任务数
+     */
+    long rejectedCount;
+
+    /**
+     * 当前线程数
+     */
+    int currentThreadCount;
+
+    /**
+     * 历史最大线程数
+     */
+    int peakThreadCount;
+
+    /**
+     * 累计创建的线程数
+     */
+    long createdThreadCount;
+
+    /**
+     * 累计销毁的线程数
+     */
+    long destroyedThreadCount;
+
+    /**
+     * 排队中的任务数（共享队列与各线程本地队列之和）
+     */
+    int queueDepth;
+
+    /**
+     * 任务从提交到开始执行的等待时间，未开启耗时统计时为空直方图
+     */
+    LatencyHistogram.Snapshot queueWaitTime;
+
+    /**
+     * 任务执行耗时，未开启耗时统计时为空直方图
+     */
+    LatencyHistogram.Snapshot executionTime;
+}
@@ -0,0 +1,297 @@
+package com.fyh.threadpool.main;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 多优先级通道的无界任务队列，作为 workQueue 传入线程池后可以通过 createNewWork(work, priority) 指定优先级
+ * <p>
+ * 每个优先级一条无锁 FIFO 通道，另用一个位图记录哪些通道非空，取任务时用 numberOfTrailingZeros 直接定位最高优先级的通道，
+ * 与通道数和排队任务数无关，入队不加全局锁。
+ * <p>
+ * 老化：低优先级通道的队头等待超过 agingNanos 后优先于高优先级任务被取出（等待最久的先取），
+ * 大量高优先级任务持续到达时低优先级任务也不会饿死
+ */
+public class PriorityLaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    /**
+     * 位图用 int 表示，最多 32 个优先级
+     */
+    private static final int MAX_LANES = 32;
+
+    private final ConcurrentLinkedQueue<Entry>[] lanes;
+    private final int defaultPriority;
+    private final long agingNanos;
+
+    /**
+     * 第 i 位为 1 表示第 i 条通道可能非空
+     */
+    private final AtomicInteger nonEmptyLanes = new AtomicInteger();
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final WaitStrategy notEmptyWait = WaitStrategy.blocking();
+    private final BooleanSupplier readable = () -> count.get() > 0;
+
+    /**
+     * @param laneCount 优先级数量，优先级取值 [0, laneCount)，0 最高
+     * @param agingTime 低优先级任务最多等待多久后优先执行，小于等于 0 时不老化（严格按优先级）
+     * @param unit      agingTime 的时间单位
+     */
+    public PriorityLaneQueue(int laneCount, long agingTime, TimeUnit unit) {
+        this(laneCount, laneCount - 1, agingTime, unit);
+    }
+
+    /**
+     * @param laneCount       优先级数量，优先级取值 [0, laneCount)，0 最高
+     * @param defaultPriority 不指定优先级（offer / createNewWork(work)）时使用的优先级
+     * @param agingTime       低优先级任务最多等待多久后优先执行，小于等于 0 时不老化（严格按优先级）
+     * @param unit            agingTime 的时间单位
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PriorityLaneQueue(int laneCount, int defaultPriority, long agingTime, TimeUnit unit) {
+        if (laneCount < 1 || laneCount > MAX_LANES) {
+            throw new IllegalArgumentException("laneCount must be in [1, " + MAX_LANES + "]: " + laneCount);
+        }
+        if (defaultPriority < 0 || defaultPriority >= laneCount) {
+            throw new IllegalArgumentException("defaultPriority must be in [0, " + laneCount + "): " + defaultPriority);
+        }
+        this.lanes = new ConcurrentLinkedQueue[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.defaultPriority = defaultPriority;
+        this.agingNanos = unit.toNanos(agingTime);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 按默认优先级放入
+     */
+    @Override
+    public boolean offer(Runnable work) {
+        return offer(work, defaultPriority);
+    }
+
+    /**
+     * @param priority 优先级，0 最高
+     */
+    public boolean offer(Runnable work, int priority) {
+        Objects.requireNonNull(work);
+        if (priority < 0 || priority >= lanes.length) {
+            throw new IllegalArgumentException("priority must be in [0, " + lanes.length + "): " + priority);
+        }
+        lanes[priority].offer(new Entry(work, System.nanoTime()));
+        int bit = 1 << priority;
+        // 通道已经标记为非空时不需要 CAS，繁忙时位图基本只读
+        int mask = nonEmptyLanes.get();
+        while ((mask & bit) == 0 && !nonEmptyLanes.compareAndSet(mask, mask | bit)) {
+            mask = nonEmptyLanes.get();
+        }
+        count.incrementAndGet();
+        notEmptyWait.signal();
+        return true;
+    }
+
+    @Override
+    public Runnable poll() {
+        int mask;
+        while ((mask = nonEmptyLanes.get()) != 0) {
+            int lane = selectLane(mask);
+            Entry entry = lanes[lane].poll();
+            if (entry != null) {
+                count.decrementAndGet();
+                return entry.work;
+            }
+            clearIfEmpty(lane);
+        }
+        return null;
+    }
+
+    /**
+     * 位图中最低位（最高优先级）的通道；更低优先级通道的队头等待超过 agingNanos 时改为其中等待最久的通道
+     */
+    private int selectLane(int mask) {
+        int lane = Integer.numberOfTrailingZeros(mask);
+        int lower = mask & ~((2 << lane) - 1);
+        if (lower == 0 || agingNanos <= 0) {
+            return lane;
+        }
+        long now = System.nanoTime();
+        long oldest = now - agingNanos;
+        for (; lower != 0; lower &= lower - 1) {
+            int candidate = Integer.numberOfTrailingZeros(lower);
+            Entry head = lanes[candidate].peek();
+            if (head != null && head.enqueueNanos - oldest <= 0) {
+                oldest = head.enqueueNanos;
+                lane = candidate;
+            }
+        }
+        return lane;
+    }
+
+    /**
+     * 通道取空后清除其标记位；清除之后再检查一次，避免和同时入队的提交方交错导致非空通道丢失标记
+     */
+    private void clearIfEmpty(int lane) {
+        int bit = 1 << lane;
+        int mask;
+        while (((mask = nonEmptyLanes.get()) & bit) != 0 && lanes[lane].isEmpty()) {
+            if (nonEmptyLanes.compareAndSet(mask, mask & ~bit)) {
+                if (!lanes[lane].isEmpty()) {
+                    nonEmptyLanes.getAndUpdate(m -> m | bit);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        int mask = nonEmptyLanes.get();
+        while (mask != 0) {
+            int lane = Integer.numberOfTrailingZeros(mask);
+            Entry entry = lanes[lane].peek();
+            if (entry != null) {
+                return entry.work;
+            }
+            mask &= mask - 1;
+        }
+        return null;
+    }
+
+    @Override
+    public void put(Runnable work) {
+        offer(work);
+    }
+
+    /**
+     * 无界队列，不会等待
+     */
+    @Override
+    public boolean offer(Runnable work, long timeout, TimeUnit unit) {
+        return offer(work);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        Runnable work;
+        while ((work = poll()) == null) {
+            notEmptyWait.await(readable, false, 0L);
+        }
+        return work;
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Runnable work;
+        while ((work = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            notEmptyWait.await(readable, true, deadline);
+        }
+        return work;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        Runnable work;
+        while (n < maxElements && (work = poll()) != null) {
+            c.add(work);
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        for (ConcurrentLinkedQueue<Entry> lane : lanes) {
+            for (Iterator<Entry> it = lane.iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.work == o && lane.remove(entry)) {
+                    count.decrementAndGet();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, count.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count.get() <= 0;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * 按优先级从高到低返回当前任务的快照迭代器，不支持 remove
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        for (ConcurrentLinkedQueue<Entry> lane : lanes) {
+            for (Entry entry : lane) {
+                snapshot.add(entry.work);
+            }
+        }
+        Iterator<Runnable> it = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                return it.next();
+            }
+        };
+    }
+
+    /**
+     * 通道中的元素：任务与入队时间
+     */
+    private static final class Entry {
+        final Runnable work;
+        final long enqueueNanos;
+
+        Entry(Runnable work, long enqueueNanos) {
+            this.work = work;
+            this.enqueueNanos = enqueueNanos;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.fyh.threadpool.main;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 任务被拒绝时由 createNewWork 抛出
+ * <p>
+ * 过载时拒绝会非常频繁，因此按拒绝原因使用预先创建好的实例且不填充异常栈，抛出时不产生分配。
+ * 实例是共享的，不能修改：initCause 直接抛出 IllegalStateException，setStackTrace 被忽略。
+ * RejectedExecutionException 没有提供关闭 suppression 的构造方法，addSuppressed 又是 final 的，
+ * 调用方不要对它调用 addSuppressed，也不要让 try-with-resources 的 close 异常挂到它上面
+ */
+public final class RejectedWorkException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 队列已满且拒绝策略拒绝了该任务
+     */
+    static final RejectedWorkException QUEUE_FULL = new RejectedWorkException("work rejected: work queue is full");
+
+    /**
+     * 线程池已关闭
+     */
+    static final RejectedWorkException SHUTDOWN = new RejectedWorkException("work rejected: thread pool is shut down");
+
+    private RejectedWorkException(String message) {
+        // cause 显式初始化为 null，之后不能再设置
+        super(message, null);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    @Override
+    public synchronized Throwable initCause(Throwable cause) {
+        throw new IllegalStateException("shared RejectedWorkException instance is immutable");
+    }
+
+    @Override
+    public void setStackTrace(StackTraceElement[] stackTrace) {
+        // 共享实例，忽略
+    }
+}
@@ -0,0 +1,76 @@
+package com.fyh.threadpool.main;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务队列已满时对新任务的处理策略，配合有界队列（如 new LinkedBlockingDeque<>(10000) 或 RingBufferBlockingQueue）使用
+ */
+public interface RejectionPolicy {
+
+    /**
+     * 队列已满，决定如何处理新任务
+     *
+     * @param work      被拒绝的任务
+     * @param workQueue 线程池的任务队列
+     * @return 处理结果，返回 ACCEPTED 或 DISCARDED_OLDEST 时任务必须已经放入 workQueue
+     */
+    SubmitStatus rejectedWork(Runnable work, BlockingQueue<Runnable> workQueue);
+
+    /**
+     * 直接拒绝，createNewWork 抛出预先创建的 RejectedWorkException（默认策略）
+     */
+    static RejectionPolicy abort() {
+        return (work, workQueue) -> SubmitStatus.REJECTED;
+    }
+
+    /**
+     * 由提交任务的线程自己执行，提交方因此自然放慢速度；任务抛出的异常直接抛给提交方
+     */
+    static RejectionPolicy callerRuns() {
+        return (work, workQueue) -> {
+            work.run();
+            return SubmitStatus.CALLER_RAN;
+        };
+    }
+
+    /**
+     * 丢弃队列中最早的任务，再放入新任务；被丢弃的是 submit 返回的 Future 时将其取消，
+     * 是 createNewWork(key, work) 的某个 key 的任务队列时连同其中未执行的任务一起丢弃
+     */
+    static RejectionPolicy discardOldest() {
+        return (work, workQueue) -> {
+            Runnable oldest = workQueue.poll();
+            if (oldest != null) {
+                StretchableThreadPool.onDiscarded(oldest);
+            }
+            // 腾出的位置可能又被其他提交方抢占，此时丢弃新任务
+            return workQueue.offer(work) ? SubmitStatus.DISCARDED_OLDEST : SubmitStatus.DISCARDED;
+        };
+    }
+
+    /**
+     * 丢弃新任务
+     */
+    static RejectionPolicy discardNewest() {
+        return (work, workQueue) -> SubmitStatus.DISCARDED;
+    }
+
+    /**
+     * 阻塞等待队列腾出位置，超时后拒绝；等待期间被中断也视为拒绝并保留中断标记
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     */
+    static RejectionPolicy blockWithTimeout(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        return (work, workQueue) -> {
+            try {
+                return workQueue.offer(work, nanos, TimeUnit.NANOSECONDS) ? SubmitStatus.ACCEPTED : SubmitStatus.REJECTED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return SubmitStatus.REJECTED;
+            }
+        };
+    }
+}
@@ -0,0 +1,405 @@
+package com.fyh.threadpool.main;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 无锁、有界、数组实现的多生产者多消费者环形队列，可以直接作为 StretchableThreadPool 的 workQueue 使用
+ * <p>
+ * 每个槽位带一个序号：序号等于写位置时槽位可写，等于写位置 + 1 时槽位可读，
+ * 生产者和消费者分别用 CAS 推进 tail 与 head，入队出队都不加锁也不分配节点对象。
+ * head 与 tail 通过类继承的方式前后填充，各自独占一条缓存行，避免伪共享。
+ * 队列满或空时的等待行为由 {@link WaitStrategy} 决定。
+ * <p>
+ * remove(Object) 把槽位中的元素 CAS 为占位符，不移动其他元素；消费者取出槽位时用 getAndSet 与之竞争，
+ * 同一个元素只会被取出或删除一次，取到占位符时跳过
+ *
+ * @param <E> 元素类型
+ */
+public class RingBufferBlockingQueue<E> extends RingBufferPad2<E> implements BlockingQueue<E> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<RingBufferTail> TAIL =
+            AtomicLongFieldUpdater.newUpdater(RingBufferTail.class, "tail");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<RingBufferHead> HEAD =
+            AtomicLongFieldUpdater.newUpdater(RingBufferHead.class, "head");
+
+    /**
+     * 被 remove 删除的元素留下的占位符
+     */
+    private static final Object REMOVED = new Object();
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Object> buffer;
+    private final AtomicLongArray sequences;
+
+    private final WaitStrategy notEmptyWait;
+    private final WaitStrategy notFullWait;
+    private final BooleanSupplier readable = this::canPoll;
+    private final BooleanSupplier writable = this::canOffer;
+
+    /**
+     * @param capacity 队列容量，会向上取整为 2 的幂
+     */
+    public RingBufferBlockingQueue(int capacity) {
+        this(capacity, WaitStrategy::blocking);
+    }
+
+    /**
+     * @param capacity     队列容量，会向上取整为 2 的幂
+     * @param waitStrategy 等待策略的创建方法，如 WaitStrategy::busySpin
+     */
+    public RingBufferBlockingQueue(int capacity, Supplier<WaitStrategy> waitStrategy) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be in [1, 2^30]: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.notEmptyWait = waitStrategy.get();
+        this.notFullWait = waitStrategy.get();
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        long pos = tail;
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                // 槽位可写，抢占写位置
+                if (TAIL.compareAndSet(this, pos, pos + 1)) {
+                    buffer.setPlain(index, e);
+                    sequences.lazySet(index, pos + 1);
+                    notEmptyWait.signal();
+                    return true;
+                }
+                pos = tail;
+            } else if (diff < 0) {
+                // 槽位还没有被上一轮的消费者释放，队列已满
+                return false;
+            } else {
+                pos = tail;
+            }
+        }
+    }
+
+    /**
+     * 一次 CAS 认领 tail 之后连续可写的多个槽位再逐个写入，只唤醒与写入数量相同数量的等待者
+     *
+     * @throws IllegalStateException 队列放不下全部元素时抛出（已放入的元素保留在队列中）
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int size = c.size();
+        if (offerAll(c) < size) {
+            throw new IllegalStateException("Queue full");
+        }
+        return size > 0;
+    }
+
+    /**
+     * 按顺序放入尽可能多的元素，放不下时停止
+     *
+     * @return 放入的元素个数，放入的总是集合中靠前的元素
+     */
+    public int offerAll(Collection<? extends E> c) {
+        Object[] elements = c.toArray();
+        for (Object e : elements) {
+            Objects.requireNonNull(e);
+        }
+        int added = 0;
+        while (added < elements.length) {
+            long pos = tail;
+            int limit = Math.min(elements.length - added, capacity);
+            int n = 0;
+            while (n < limit && sequences.get((int) (pos + n) & mask) == pos + n) {
+                n++;
+            }
+            if (n == 0) {
+                if (sequences.get((int) pos & mask) - pos < 0) {
+                    break;
+                }
+                continue;
+            }
+            if (TAIL.compareAndSet(this, pos, pos + n)) {
+                for (int i = 0; i < n; i++) {
+                    int index = (int) (pos + i) & mask;
+                    buffer.setPlain(index, elements[added + i]);
+                    sequences.lazySet(index, pos + i + 1);
+                }
+                notEmptyWait.signal(n);
+                added += n;
+            }
+        }
+        return added;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head;
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                // 槽位可读，抢占读位置
+                if (HEAD.compareAndSet(this, pos, pos + 1)) {
+                    Object e = buffer.getAndSet(index, null);
+                    sequences.lazySet(index, pos + capacity);
+                    notFullWait.signal();
+                    if (e != REMOVED) {
+                        return (E) e;
+                    }
+                }
+                pos = head;
+            } else if (diff < 0) {
+                // 槽位还没有写入，队列为空
+                return null;
+            } else {
+                pos = head;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        while (true) {
+            long pos = head;
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) {
+                return null;
+            }
+            Object e = buffer.get(index);
+            // 队头是已删除的占位符时把它出队，再看下一个
+            if (e == REMOVED) {
+                if (HEAD.compareAndSet(this, pos, pos + 1)) {
+                    buffer.set(index, null);
+                    sequences.lazySet(index, pos + capacity);
+                    notFullWait.signal();
+                }
+                continue;
+            }
+            // 读取期间 head 没有移动说明读到的元素有效
+            if (e != null && head == pos) {
+                return (E) e;
+            }
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        while (!offer(e)) {
+            notFullWait.await(writable, false, 0L);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(e)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            notFullWait.await(writable, true, deadline);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        while ((e = poll()) == null) {
+            notEmptyWait.await(readable, false, 0L);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        while ((e = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            notEmptyWait.await(readable, true, deadline);
+        }
+        return e;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 一次 CAS 认领从 head 开始连续可读的多个槽位，再逐个取出
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int limit = Math.min(maxElements, capacity);
+        while (limit > 0) {
+            long pos = head;
+            int n = 0;
+            while (n < limit && sequences.get((int) (pos + n) & mask) == pos + n + 1) {
+                n++;
+            }
+            if (n == 0) {
+                return 0;
+            }
+            if (HEAD.compareAndSet(this, pos, pos + n)) {
+                int drained = 0;
+                for (int i = 0; i < n; i++) {
+                    int index = (int) (pos + i) & mask;
+                    Object e = buffer.getAndSet(index, null);
+                    sequences.lazySet(index, pos + i + capacity);
+                    if (e != REMOVED) {
+                        c.add((E) e);
+                        drained++;
+                    }
+                }
+                // 一次腾出了 n 个槽位，最多唤醒 n 个等待中的生产者
+                notFullWait.signal(n);
+                // 认领的槽位全是占位符时继续取
+                if (drained > 0) {
+                    return drained;
+                }
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public int size() {
+        // 先读 head 再读 tail，保证结果不为负
+        long h = head;
+        long t = tail;
+        return (int) Math.max(0, Math.min(t - h, capacity));
+    }
+
+    /**
+     * 队头的占位符会被出队，只剩占位符时返回 true
+     */
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    /**
+     * 从队头向队尾查找，找到后把槽位 CAS 为占位符；同时被消费者取走时 CAS 失败，继续查找后面的槽位
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        long h = head;
+        long t = tail;
+        for (long pos = h; pos < t; pos++) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) {
+                continue;
+            }
+            Object e = buffer.get(index);
+            if (e != REMOVED && o.equals(e) && buffer.compareAndSet(index, e, REMOVED)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    /**
+     * 返回当前可读元素的快照迭代器，迭代器不支持 remove，删除元素用 remove(Object)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long h = head;
+        long t = tail;
+        for (long pos = h; pos < t; pos++) {
+            int index = (int) pos & mask;
+            Object e = buffer.get(index);
+            if (sequences.get(index) == pos + 1 && e != null && e != REMOVED) {
+                snapshot.add((E) e);
+            }
+        }
+        Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    private boolean canPoll() {
+        long pos = head;
+        return sequences.get((int) pos & mask) == pos + 1;
+    }
+
+    private boolean canOffer() {
+        long pos = tail;
+        return sequences.get((int) pos & mask) == pos;
+    }
+}
+
+/**
+ * 以下几个类只用于排布字段：tail 与 head 前后各填充 7 个 long，各自独占缓存行
+ */
+abstract class RingBufferPad0<E> extends AbstractQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06;
+}
+
+abstract class RingBufferTail<E> extends RingBufferPad0<E> {
+    volatile long tail;
+}
+
+abstract class RingBufferPad1<E> extends RingBufferTail<E> {
+    long p10, p11, p12, p13, p14, p15, p16;
+}
+
+abstract class RingBufferHead<E> extends RingBufferPad1<E> {
+    volatile long head;
+}
+
+abstract class RingBufferPad2<E> extends RingBufferHead<E> {
+    long p20, p21, p22, p23, p24, p25, p26;
+}
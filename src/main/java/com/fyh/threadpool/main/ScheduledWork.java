@@ -0,0 +1,91 @@
+package com.fyh.threadpool.main;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * schedule / scheduleAtFixedRate 返回的定时任务，同时是时间轮中的链表节点，不再额外分配节点对象
+ *
+ * @param <V> 结果类型
+ */
+public class ScheduledWork<V> extends WorkFuture<V> implements ScheduledFuture<V> {
+    private final StretchableThreadPool pool;
+
+    /**
+     * 大于 0 为固定频率，小于 0 为固定延迟（取反），等于 0 只执行一次
+     */
+    private final long period;
+
+    /**
+     * 下次执行的时间（System.nanoTime）
+     */
+    private volatile long deadline;
+
+    /**
+     * 以下字段只由时间轮的驱动线程读写
+     */
+    TimingWheel.Bucket bucket;
+    ScheduledWork<?> prev;
+    ScheduledWork<?> next;
+
+    ScheduledWork(StretchableThreadPool pool, Callable<V> callable, long deadline) {
+        super(callable);
+        this.pool = pool;
+        this.period = 0;
+        this.deadline = deadline;
+    }
+
+    ScheduledWork(StretchableThreadPool pool, Runnable runnable, long deadline, long period) {
+        super(runnable, null);
+        this.pool = pool;
+        this.period = period;
+        this.deadline = deadline;
+    }
+
+    long deadline() {
+        return deadline;
+    }
+
+    public boolean isPeriodic() {
+        return period != 0;
+    }
+
+    @Override
+    public void run() {
+        if (period == 0) {
+            super.run();
+        } else if (runAndReset()) {
+            // 固定频率以上次计划时间为基准，线程池繁忙导致执行推迟也不会累积漂移
+            deadline = period > 0 ? deadline + period : System.nanoTime() - period;
+            pool.reschedule(this);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            pool.onScheduledCancelled(this);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other == this) {
+            return 0;
+        }
+        if (other instanceof ScheduledWork) {
+            long diff = deadline - ((ScheduledWork<?>) other).deadline;
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
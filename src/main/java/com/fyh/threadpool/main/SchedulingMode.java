@@ -0,0 +1,23 @@
+package com.fyh.threadpool.main;
+
+/**
+ * 线程池的任务调度方式
+ */
+public enum SchedulingMode {
+    /**
+     * 所有线程共用同一个任务队列（默认）
+     */
+    SHARED_QUEUE,
+
+    /**
+     * 每个线程拥有自己的本地双端队列：线程内提交的任务放入本地队列头部，
+     * 线程优先从本地队列头部取任务，空闲时再从共享队列取或者从其他线程本地队列的尾部窃取
+     */
+    WORK_STEALING,
+
+    /**
+     * 不保留常驻线程，每个任务都由线程工厂新建一个线程执行，同时执行的任务数不超过最大线程数，
+     * 超出的任务在任务队列中排队。配合虚拟线程工厂适合大量阻塞型任务
+     */
+    THREAD_PER_TASK
+}
@@ -0,0 +1,285 @@
+package com.fyh.threadpool.main;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 由多个分片组成的任务队列，可以直接作为 StretchableThreadPool 的 workQueue 使用，大量生产者同时提交时不再争用同一把队列锁
+ * <p>
+ * 放入时随机选两个分片，放进较短的那个（power of two choices），各分片长度接近，整体上近似 FIFO；
+ * 取出时先取本线程的主分片，为空再依次扫描其他分片，任务不会因为分片为空而被漏掉。
+ * 主分片按线程 ID 取模，线程池的线程依次创建，ID 连续，会均匀分布到各个分片。
+ * <p>
+ * 各分片的长度单独计数（每个计数独占一条缓存行），选分片时不需要读取分片本身的 size（LinkedBlockingDeque 的 size 需要加锁）
+ *
+ * @param <E> 元素类型
+ */
+public class ShardedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    /**
+     * 计数数组中相邻分片的间隔，16 个 int 为 64 字节，避免不同分片的计数伪共享
+     */
+    private static final int STRIDE = 16;
+
+    private final BlockingQueue<E>[] shards;
+    private final AtomicIntegerArray sizes;
+
+    private final WaitStrategy notEmptyWait = WaitStrategy.blocking();
+    private final WaitStrategy notFullWait = WaitStrategy.blocking();
+    private final BooleanSupplier readable = () -> !isEmpty();
+    private final BooleanSupplier writable = () -> remainingCapacity() > 0;
+
+    /**
+     * @param shardCount   分片数，一般取生产者线程数量级，例如 CPU 核数
+     * @param shardFactory 分片的创建方法，如 LinkedBlockingQueue::new；有界分片的总容量为各分片容量之和
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardedBlockingQueue(int shardCount, Supplier<? extends BlockingQueue<E>> shardFactory) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        this.shards = new BlockingQueue[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = Objects.requireNonNull(shardFactory.get());
+        }
+        this.sizes = new AtomicIntegerArray(shardCount * STRIDE);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 放入随机两个分片中较短的一个，该分片已满时依次尝试其他分片
+     */
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        int n = shards.length;
+        int first = 0;
+        if (n > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            first = random.nextInt(n);
+            int second = random.nextInt(n - 1);
+            if (second >= first) {
+                second++;
+            }
+            if (sizeOf(second) < sizeOf(first)) {
+                first = second;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int shard = (first + i) % n;
+            if (shards[shard].offer(e)) {
+                // 放入成功后再计数，计数为 0 时队列不一定为空，但计数大于 0 时一定有元素已经放入
+                sizes.incrementAndGet(shard * STRIDE);
+                notEmptyWait.signal();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 先取本线程的主分片，再从下一个分片开始依次扫描
+     */
+    @Override
+    public E poll() {
+        int n = shards.length;
+        int home = homeShard();
+        for (int i = 0; i < n; i++) {
+            int shard = (home + i) % n;
+            if (sizeOf(shard) == 0) {
+                continue;
+            }
+            E e = shards[shard].poll();
+            if (e != null) {
+                sizes.decrementAndGet(shard * STRIDE);
+                notFullWait.signal();
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public E peek() {
+        int n = shards.length;
+        int home = homeShard();
+        for (int i = 0; i < n; i++) {
+            E e = shards[(home + i) % n].peek();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        while (!offer(e)) {
+            notFullWait.await(writable, false, 0L);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(e)) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            notFullWait.await(writable, true, deadline);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        while ((e = poll()) == null) {
+            notEmptyWait.await(readable, false, 0L);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        while ((e = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            notEmptyWait.await(readable, true, deadline);
+        }
+        return e;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 与 poll 的顺序相同，主分片取完再取其他分片，每个分片一次 drainTo
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int n = shards.length;
+        int home = homeShard();
+        int drained = 0;
+        for (int i = 0; i < n && drained < maxElements; i++) {
+            int shard = (home + i) % n;
+            if (sizeOf(shard) == 0) {
+                continue;
+            }
+            int count = shards[shard].drainTo(c, maxElements - drained);
+            if (count > 0) {
+                sizes.addAndGet(shard * STRIDE, -count);
+                drained += count;
+            }
+        }
+        if (drained > 0) {
+            notFullWait.signal(drained);
+        }
+        return drained;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (shards[shard].remove(o)) {
+                sizes.decrementAndGet(shard * STRIDE);
+                notFullWait.signal();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        long total = 0;
+        for (int shard = 0; shard < shards.length; shard++) {
+            total += sizeOf(shard);
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (sizeOf(shard) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 各分片剩余容量之和，有一个分片无界时返回 Integer.MAX_VALUE
+     */
+    @Override
+    public int remainingCapacity() {
+        long total = 0;
+        for (BlockingQueue<E> shard : shards) {
+            int remaining = shard.remainingCapacity();
+            if (remaining == Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+            total += remaining;
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 按分片顺序返回当前元素的快照迭代器，不支持 remove
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        for (BlockingQueue<E> shard : shards) {
+            snapshot.addAll(shard);
+        }
+        Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    /**
+     * 分片长度，取出先于计数时可能短暂为负
+     */
+    private int sizeOf(int shard) {
+        return Math.max(0, sizes.get(shard * STRIDE));
+    }
+
+    private int homeShard() {
+        return (int) (Thread.currentThread().getId() % shards.length);
+    }
+}
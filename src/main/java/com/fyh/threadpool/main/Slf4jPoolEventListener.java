@@ -0,0 +1,42 @@
+package com.fyh.threadpool.main;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 以 INFO 日志输出线程池事件，配合采样间隔使用可以在生产环境常开
+ */
+@Slf4j
+public class Slf4jPoolEventListener implements PoolEventListener {
+
+    @Override
+    public void onWorkSubmitted(Runnable work) {
+        log.info("new work added for function {}", work);
+    }
+
+    @Override
+    public void onWorkRejected(Runnable work, SubmitStatus status) {
+        log.info("work for function {} {}", work, status);
+    }
+
+    @Override
+    public void beforeWork(Thread thread, Runnable work) {
+        log.info("thread {} work for function: {}", thread.getName(), work);
+    }
+
+    @Override
+    public void afterWork(Thread thread, Runnable work, Throwable failure) {
+        if (failure != null) {
+            log.info("thread {} work for function {} failed: {}", thread.getName(), work, failure.toString());
+        }
+    }
+
+    @Override
+    public void onThreadCreated(Thread thread) {
+        log.info("thread {} created", thread.getName());
+    }
+
+    @Override
+    public void onThreadTerminated(Thread thread) {
+        log.info("thread {} terminated", thread.getName());
+    }
+}
@@ -3,18 +3,108 @@ package com.fyh.threadpool.main;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 @Slf4j
-public class StretchableThreadPool {
+public class StretchableThreadPool extends AbstractExecutorService implements ScheduledExecutorService {
+    /**
+     * 当前线程所属的工作线程对象（非线程池线程为 null）
+     */
+    private static final ThreadLocal<Worker> CURRENT_WORKER = new ThreadLocal<>();
+
+    /**
+     * 线程池运行状态：运行中 -> SHUTDOWN（不再接收任务，执行完队列中的任务） -> STOP（不再执行队列中的任务，中断正在执行的任务） -> TERMINATED（所有线程已退出）
+     */
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+    private static final int TERMINATED = 3;
+
+    /**
+     * ctl 的低 32 位是线程数，高 32 位是运行状态
+     */
+    private static final int COUNT_BITS = 32;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    /**
+     * 未指定优先级，使用队列的默认优先级
+     */
+    private static final int NO_PRIORITY = -1;
+
+    /**
+     * 定时任务的精度（时间轮每个 tick 的长度）
+     */
+    private static final long TIMER_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 定时任务的最大延迟，超过的按该值处理（约 73 年），保证 deadline 计算不会溢出
+     */
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >>> 2;
+
+    /**
+     * 同一个 key 连续执行多少个任务后把线程让给其他任务
+     */
+    private static final int KEYED_BATCH_SIZE = 64;
+
+    /**
+     * 空闲线程挂起前写入自己的 handoff，提交方把它替换为任务（直接交接）或 null（唤醒去取队列中的任务）
+     */
+    private static final Object WAITING = new Object();
+
+    /**
+     * 回收线程把超时的空闲线程的 handoff 替换为 RETIRE，该线程醒来后释放自己的名额并退出
+     */
+    private static final Object RETIRE = new Object();
+
+    /**
+     * 回收线程两次检查同一个线程池的最小间隔，maxWaitMilliseconds 为 0 时回收线程也不会空转
+     */
+    private static final long MIN_REAP_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final AtomicReferenceFieldUpdater<Worker, Object> HANDOFF =
+            AtomicReferenceFieldUpdater.newUpdater(Worker.class, Object.class, "handoff");
+
     /**
      * 堵塞任务队列
      */
     private BlockingQueue<Runnable> workQueue;
 
+    /**
+     * 任务调度方式
+     */
+    private SchedulingMode schedulingMode;
+
     /**
      * 一个线程等待多少毫秒仍然没有任务就自杀
      */
@@ -32,9 +122,10 @@ public class StretchableThreadPool {
 
 
     /**
-     * 当前线程数量
+     * 运行状态与当前线程数打包在一个字里，线程数的每次增减都是对它的一次 CAS，创建与回收线程时同时校验两者：
+     * 扩容不会越过上限，也不会在 shutdownNow 之后创建线程；多个空闲线程可以同时退出，线程数不会低于核心线程数
      */
-    private AtomicInteger nowThreadCount;
+    private final AtomicLong ctl = new AtomicLong(ctlOf(RUNNING, 0));
 
     /**
      * 线程名称递增ID号
@@ -42,9 +133,131 @@ public class StretchableThreadPool {
     private AtomicInteger threadIncrementThreadName;
 
     /**
-     * 线程锁用来锁住线程销毁，避免销毁的线程超出预期
+     * 线程池中存活的工作线程（工作窃取时用于查找窃取对象）
+     */
+    private List<Worker> workers;
+
+    /**
+     * 正在共享队列上等待任务的空闲线程数量
+     */
+    private AtomicInteger idleWorkerCount;
+
+    /**
+     * 挂起等待任务的空闲线程栈（后进先出），提交方从栈顶取出最近空闲的线程直接交接任务，只有栈底的线程会超时退出
+     */
+    private final ConcurrentLinkedDeque<Worker> idleWorkers = new ConcurrentLinkedDeque<>();
+
+    /**
+     * 创建线程的工厂，为 null 时使用递增数字命名的平台线程
+     */
+    private ThreadFactory threadFactory;
+
+    /**
+     * THREAD_PER_TASK 模式下限制同时执行的任务数
+     */
+    private Semaphore concurrencyPermits;
+
+    /**
+     * 线程每次从共享队列批量取出的最大任务数，1 表示每次只 poll 一个
+     */
+    private volatile int drainBatchSize = 1;
+
+    /**
+     * 运行统计计数，LongAdder 分段累加，多个线程同时更新时没有竞争
+     */
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder createdThreadCount = new LongAdder();
+    private final LongAdder destroyedThreadCount = new LongAdder();
+    private final AtomicInteger peakThreadCount = new AtomicInteger();
+
+    /**
+     * 是否统计任务排队等待时间和执行耗时：用户开启了统计，或者注册了线程数调节策略
+     */
+    private volatile boolean latencyTracking;
+
+    /**
+     * 用户通过 setLatencyTrackingEnabled 设置的值，取消调节策略后 latencyTracking 恢复为该值，由 stateLock 保护
+     */
+    private boolean latencyTrackingEnabled;
+
+    /**
+     * 有界队列已满时的拒绝策略
+     */
+    private volatile RejectionPolicy rejectionPolicy = RejectionPolicy.abort();
+
+    /**
+     * 事件监听器及其采样间隔，未注册时为 null，任务热路径上只多一次 volatile 读
      */
-    private ReentrantLock lock;
+    private volatile EventSampling eventSampling;
+
+    /**
+     * 已退出线程留下的耗时统计，THREAD_PER_TASK 模式下所有任务也记录在这里
+     */
+    private final WorkStats sharedStats = new WorkStats();
+
+    /**
+     * shutdownNow 是否已经收集过各线程手上还没有执行的任务，之后线程再发现的由自己执行
+     */
+    private volatile boolean pendingCollected;
+
+    /**
+     * shutdownNow 之后退出的线程交出的、还没有执行的任务
+     */
+    private final ConcurrentLinkedQueue<Runnable> stoppedWork = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 修改运行状态与等待线程池终止使用的锁
+     */
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final Condition termination = stateLock.newCondition();
+
+    /**
+     * THREAD_PER_TASK 模式下正在执行任务的线程，shutdownNow 时中断它们
+     */
+    private final Set<Thread> taskThreads = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 定时任务使用的时间轮，第一次提交定时任务时才创建（同时启动其驱动线程）
+     */
+    private volatile TimingWheel timingWheel;
+
+    /**
+     * 按 key 串行执行的任务队列，只保存有任务未执行完的 key
+     */
+    private final ConcurrentHashMap<Object, KeyedQueue> keyedQueues = new ConcurrentHashMap<>();
+
+    /**
+     * 线程数调节策略给出的目标线程数，未注册 PoolSizer 时为 -1（按排队任务数扩容，上限为最大线程数）
+     */
+    private volatile int targetThreadCount = -1;
+
+    /**
+     * 线程数调节策略的控制线程，由 stateLock 保护
+     */
+    private SizingController sizingController;
+
+    /**
+     * 正在 blocking 中阻塞的工作线程数，阻塞期间线程数上限相应提高
+     */
+    private final AtomicInteger blockedWorkerCount = new AtomicInteger();
+
+    /**
+     * 卡顿检测发现的、执行超时且处于阻塞状态的线程数（开启补偿时才计入），与 blockedWorkerCount 一样提高线程数上限
+     */
+    private volatile int stalledWorkerCount;
+
+    /**
+     * 为阻塞的线程最多额外创建的补偿线程数
+     */
+    private volatile int maxCompensationThreads;
+
+    /**
+     * 卡顿检测线程，由 stateLock 保护
+     */
+    private StallWatchdog stallWatchdog;
 
     /**
      * @param coreThreadCount     核心线程数量
@@ -53,6 +266,50 @@ public class StretchableThreadPool {
      * @param workQueue           阻塞队列
      */
     public StretchableThreadPool(int coreThreadCount, int maxThreadCount, long maxWaitMilliseconds, BlockingQueue<Runnable> workQueue) {
+        this(coreThreadCount, maxThreadCount, maxWaitMilliseconds, workQueue, SchedulingMode.SHARED_QUEUE);
+    }
+
+    /**
+     * 分片队列：线程池持有 shardCount 个任务队列分片，提交时放入随机两个分片中较短的一个，线程先取自己的主分片再扫描其他分片，
+     * 大量生产者同时提交时不再争用同一把队列锁，见 {@link ShardedBlockingQueue}
+     *
+     * @param coreThreadCount     核心线程数量
+     * @param maxThreadCount      最大线程数量
+     * @param maxWaitMilliseconds 线程等待多长时间没有任务后自杀
+     * @param shardCount          分片数
+     * @param shardFactory        分片的创建方法，如 LinkedBlockingQueue::new
+     */
+    public StretchableThreadPool(int coreThreadCount, int maxThreadCount, long maxWaitMilliseconds,
+                                 int shardCount, Supplier<? extends BlockingQueue<Runnable>> shardFactory) {
+        this(coreThreadCount, maxThreadCount, maxWaitMilliseconds, new ShardedBlockingQueue<>(shardCount, shardFactory));
+    }
+
+    /**
+     * @param coreThreadCount     核心线程数量
+     * @param maxThreadCount      最大线程数量
+     * @param maxWaitMilliseconds 线程等待多长时间没有任务后自杀
+     * @param workQueue           阻塞队列
+     * @param schedulingMode      任务调度方式
+     */
+    public StretchableThreadPool(int coreThreadCount, int maxThreadCount, long maxWaitMilliseconds,
+                                 BlockingQueue<Runnable> workQueue, SchedulingMode schedulingMode) {
+        this(coreThreadCount, maxThreadCount, maxWaitMilliseconds, workQueue, schedulingMode, null);
+    }
+
+    /**
+     * 例如使用虚拟线程执行阻塞型任务：
+     * new StretchableThreadPool(0, 10000, 0, queue, SchedulingMode.THREAD_PER_TASK, VirtualThreads.factory("vt-"))
+     *
+     * @param coreThreadCount     核心线程数量（THREAD_PER_TASK 模式下不使用）
+     * @param maxThreadCount      最大线程数量（THREAD_PER_TASK 模式下为同时执行的最大任务数）
+     * @param maxWaitMilliseconds 线程等待多长时间没有任务后自杀（THREAD_PER_TASK 模式下不使用）
+     * @param workQueue           阻塞队列
+     * @param schedulingMode      任务调度方式
+     * @param threadFactory       创建线程的工厂，可以是 VirtualThreads.factory，为 null 时使用平台线程
+     */
+    public StretchableThreadPool(int coreThreadCount, int maxThreadCount, long maxWaitMilliseconds,
+                                 BlockingQueue<Runnable> workQueue, SchedulingMode schedulingMode,
+                                 ThreadFactory threadFactory) {
         if (coreThreadCount > maxThreadCount) {
             log.error("核心线程数量不能大于最大线程数量");
         }
@@ -62,106 +319,2042 @@ public class StretchableThreadPool {
         this.maxThreadCount = maxThreadCount;
         this.maxWaitMilliseconds = maxWaitMilliseconds;
         this.workQueue = workQueue;
+        this.schedulingMode = schedulingMode;
+        this.threadFactory = threadFactory;
+        this.maxCompensationThreads = maxThreadCount;
 
-        // 初始化锁和线程池中的记录变量
-        this.nowThreadCount = new AtomicInteger(0);
+        // 初始化线程池中的记录变量
         this.threadIncrementThreadName = new AtomicInteger(0);
-        this.lock = new ReentrantLock();
+        this.workers = new CopyOnWriteArrayList<>();
+        this.idleWorkerCount = new AtomicInteger(0);
 
-        // 500毫秒判断一次是否需要扩容线程（单独开一个监控线程用于监控扩容条件）
-        this.startThreadsToExpandCapacity(500);
+        // 每个任务一个线程的模式下不创建常驻线程，只用信号量限制并发
+        if (schedulingMode == SchedulingMode.THREAD_PER_TASK) {
+            this.concurrencyPermits = new Semaphore(maxThreadCount);
+            log.info("thread pool created, runs at most {} works concurrently", maxThreadCount);
+            return;
+        }
 
-        // 创建核心线程数量的线程用于执行真正要执行的任务
+        // 创建核心线程数量的线程用于执行真正要执行的任务（扩容在提交任务时判断，不再单独开监控线程）
         for (int i = 0; i < coreThreadCount; ++i) {
-            this.createNewThread();
+            this.tryAddThread();
         }
-        log.info("thread pool created, now has {} threads", nowThreadCount.get());
+        log.info("thread pool created, now has {} threads", nowThreadCount());
     }
 
 
     /**
      * @param work:真正要执行的任务对象（需要重写Runnable接口中的run方法为自己想要执行的）
+     * @throws RejectedWorkException 队列已满且拒绝策略拒绝了该任务
      */
     public void createNewWork(Runnable work) {
-        workQueue.add(work);
-        log.info("new work added for function {}", work);
+        if (tryCreateNewWork(work) == SubmitStatus.REJECTED) {
+            throw rejection();
+        }
+    }
+
+    /**
+     * 按优先级提交任务，workQueue 为 PriorityLaneQueue 时生效，其他队列忽略优先级按 FIFO 处理
+     *
+     * @param work     真正要执行的任务对象
+     * @param priority 优先级，0 最高
+     * @throws RejectedWorkException 线程池已关闭，或者队列已满且拒绝策略拒绝了该任务
+     */
+    public void createNewWork(Runnable work, int priority) {
+        if (tryCreateNewWork(work, priority) == SubmitStatus.REJECTED) {
+            throw rejection();
+        }
+    }
+
+    /**
+     * 按 key 串行提交任务：相同 key 的任务严格按提交顺序依次执行、不会并发，不同 key 的任务并行执行
+     * <p>
+     * 每个有待执行任务的 key 对应一个轻量队列，同一时间最多一个线程在执行它，任务之间不需要加锁、也不会堵塞其他线程；
+     * key 的任务全部执行完后队列即被移除，空闲的 key 不占用内存。一个 key 连续执行一批任务后会重新排队，不会一直占用线程
+     *
+     * @param key  串行执行的分组，例如账户 ID，需要正确实现 equals / hashCode
+     * @param work 任务
+     * @throws RejectedWorkException 队列已满且拒绝策略拒绝了该任务
+     */
+    public void createNewWork(Object key, Runnable work) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(work);
+        if (runState() != RUNNING) {
+            onSubmitted(work, SubmitStatus.REJECTED);
+            throw RejectedWorkException.SHUTDOWN;
+        }
+        Runnable queued = latencyTracking ? new TimedWork(work) : work;
+        boolean[] schedule = new boolean[1];
+        KeyedQueue queue = keyedQueues.compute(key, (k, q) -> {
+            if (q == null) {
+                q = new KeyedQueue(k);
+            }
+            q.works.addLast(queued);
+            // 已经在排队或执行中的 key 只需要追加任务
+            if (!q.scheduled) {
+                q.scheduled = true;
+                schedule[0] = true;
+            }
+            return q;
+        });
+        SubmitStatus status = schedule[0] ? enqueueWork(queue, NO_PRIORITY) : SubmitStatus.ACCEPTED;
+        if (status == SubmitStatus.REJECTED || status == SubmitStatus.DISCARDED) {
+            // 撤回本任务；这期间同一个 key 追加的任务已经按 ACCEPTED 返回给各自的提交方，队列保持已调度状态由本线程负责放回
+            boolean[] remaining = new boolean[1];
+            keyedQueues.compute(key, (k, q) -> {
+                if (q != queue) {
+                    return q;
+                }
+                q.works.removeLastOccurrence(queued);
+                if (q.works.isEmpty()) {
+                    q.scheduled = false;
+                    return null;
+                }
+                remaining[0] = true;
+                return q;
+            });
+            if (remaining[0] && !requeue(queue)) {
+                // 放不回共享队列时其余任务按丢弃处理：Future 被取消，并计入拒绝数
+                for (Runnable dropped : queue.discard()) {
+                    onSubmitted(dropped, SubmitStatus.DISCARDED);
+                }
+            }
+        } else if (runState() != RUNNING && queue.works.removeLastOccurrence(queued)) {
+            // 与 submitWork 相同，追加后线程池刚好被关闭：还能从 key 的队列中取回就拒绝，否则已经被执行或被 shutdownNow 取走
+            status = SubmitStatus.REJECTED;
+        }
+        onSubmitted(work, status);
+        if (status == SubmitStatus.REJECTED) {
+            throw rejection();
+        }
     }
 
+    /**
+     * ExecutorService 的提交入口，与 createNewWork 相同
+     *
+     * @throws RejectedWorkException 线程池已关闭，或者队列已满且拒绝策略拒绝了该任务
+     */
+    @Override
+    public void execute(Runnable command) {
+        createNewWork(command);
+    }
 
     /**
-     * 线程池中每个线程真正在执行的方法
+     * 提交带返回值的任务
+     * <p>
+     * 返回的 WorkFuture 本身就是放入队列的任务对象，不再额外包装；任务被丢弃时 Future 会被取消，get 不会一直阻塞
+     *
+     * @param work 真正要执行的任务
+     * @return 任务的 Future，可以阻塞/超时获取结果或注册完成回调
+     * @throws RejectedWorkException 线程池已关闭，或者队列已满且拒绝策略拒绝了该任务
      */
-    private void workerFunction() {
-        while (true) {
-            try {
-                // 尝试获取任务并等待，如果等待的时间超过设定的时间没有任务就需要判断是否销毁线程了
-                Runnable workToDo = workQueue.poll(maxWaitMilliseconds, TimeUnit.MILLISECONDS);
+    @Override
+    public <T> WorkFuture<T> submit(Callable<T> work) {
+        WorkFuture<T> future = new WorkFuture<>(work);
+        createNewWork(future);
+        return future;
+    }
 
-                // 等待超时的情况（没取到任务）
-                if (workToDo == null) {
+    @Override
+    public WorkFuture<?> submit(Runnable work) {
+        WorkFuture<Object> future = new WorkFuture<>(work, null);
+        createNewWork(future);
+        return future;
+    }
+
+    @Override
+    public <T> WorkFuture<T> submit(Runnable work, T result) {
+        WorkFuture<T> future = new WorkFuture<>(work, result);
+        createNewWork(future);
+        return future;
+    }
 
-                    // 双重校验自杀条件，确保安全自杀，线程池线程数量不会小于核心线程数
-                    if (nowThreadCount.get() > coreThreadCount) {
-                        // 尝试去加锁，如果加锁失败那就再次循环不去等待，防止同一时间内大量线程被销毁
-                        boolean lockedSuccess = lock.tryLock();
+    /**
+     * invokeAll / invokeAny 使用的任务对象同样是 WorkFuture
+     */
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new WorkFuture<>(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WorkFuture<>(runnable, value);
+    }
 
-                        // 加锁成功，再次判断是否满足自杀条件
-                        if (lockedSuccess) {
+    /**
+     * 延迟 delay 之后执行一次
+     *
+     * @throws RejectedWorkException 线程池已关闭
+     */
+    @Override
+    public ScheduledWork<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return scheduleWork(new ScheduledWork<>(this, Objects.requireNonNull(command), deadlineAfter(delay, unit), 0));
+    }
 
-                            // 满足自杀条件，线程自杀，解锁
-                            if (nowThreadCount.get() > coreThreadCount) {
-                                log.info("* thread {} end, left {} threads in pool", Thread.currentThread().getName(), nowThreadCount.decrementAndGet());
-                                lock.unlock();
-                                break;
-                            }
+    /**
+     * 延迟 delay 之后执行一次，通过返回的 Future 获取结果
+     *
+     * @throws RejectedWorkException 线程池已关闭
+     */
+    @Override
+    public <V> ScheduledWork<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return scheduleWork(new ScheduledWork<>(this, Objects.requireNonNull(callable), deadlineAfter(delay, unit)));
+    }
 
-                            // 不满足自杀条件就解锁继续循环
-                            lock.unlock();
-                        }
-                    }
-                    continue;
+    /**
+     * 以固定频率执行：第 n 次计划在 initialDelay + n * period 执行，与上一次实际何时执行完无关，线程池繁忙时不会累积漂移
+     * <p>
+     * 同一个任务不会并发执行，执行耗时超过 period 时下一次在上一次结束后立即执行；任务抛出异常后不再执行
+     *
+     * @throws RejectedWorkException 线程池已关闭
+     */
+    @Override
+    public ScheduledWork<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        return scheduleWork(new ScheduledWork<>(this, Objects.requireNonNull(command),
+                deadlineAfter(initialDelay, unit), Math.min(unit.toNanos(period), MAX_DELAY_NANOS)));
+    }
+
+    /**
+     * 以固定间隔执行：每次执行结束后再等待 delay 执行下一次；任务抛出异常后不再执行
+     *
+     * @throws RejectedWorkException 线程池已关闭
+     */
+    @Override
+    public ScheduledWork<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay must be positive: " + delay);
+        }
+        return scheduleWork(new ScheduledWork<>(this, Objects.requireNonNull(command),
+                deadlineAfter(initialDelay, unit), -Math.min(unit.toNanos(delay), MAX_DELAY_NANOS)));
+    }
+
+    /**
+     * 提交任务，队列已满时按拒绝策略处理，不会因为被拒绝而抛出异常
+     * <p>
+     * 线程池关闭后直接返回 REJECTED，不再经过拒绝策略；被丢弃的任务如果是 Future 会被取消
+     *
+     * @param work 真正要执行的任务对象
+     * @return 提交结果，提交方可以据此放慢提交速度
+     */
+    public SubmitStatus tryCreateNewWork(Runnable work) {
+        return submitWork(work, NO_PRIORITY);
+    }
+
+    /**
+     * 按优先级提交任务，不会因为被拒绝而抛出异常
+     *
+     * @param work     真正要执行的任务对象
+     * @param priority 优先级，0 最高；workQueue 是 PriorityLaneQueue 时必须小于通道数，否则忽略
+     * @return 提交结果
+     */
+    public SubmitStatus tryCreateNewWork(Runnable work, int priority) {
+        if (priority < 0) {
+            throw new IllegalArgumentException("priority must not be negative: " + priority);
+        }
+        // 任务可能直接交给空闲线程而不进队列，在这里统一校验，不依赖 PriorityLaneQueue.offer
+        if (workQueue instanceof PriorityLaneQueue && priority >= ((PriorityLaneQueue) workQueue).getLaneCount()) {
+            throw new IllegalArgumentException("priority must be in [0, "
+                    + ((PriorityLaneQueue) workQueue).getLaneCount() + "): " + priority);
+        }
+        return submitWork(work, priority);
+    }
+
+    private SubmitStatus submitWork(Runnable work, int priority) {
+        if (work == null) {
+            throw new NullPointerException();
+        }
+        SubmitStatus status = enqueueWork(work, priority);
+        onSubmitted(work, status);
+        return status;
+    }
+
+    /**
+     * 把任务放入本地队列、交给空闲线程或放入共享队列，不做提交统计；按 key 串行的队列由其中的每个任务各自统计
+     */
+    private SubmitStatus enqueueWork(Runnable work, int priority) {
+        if (runState() != RUNNING) {
+            return SubmitStatus.REJECTED;
+        }
+        // 按 key 串行的队列本身不统计排队时间，其中的任务追加时各自包装
+        Runnable queued = latencyTracking && !(work instanceof KeyedQueue) ? new TimedWork(work) : work;
+        SubmitStatus status;
+
+        // 工作窃取模式下线程内提交的任务放入自己的本地队列；有线程空闲在共享队列上等待时仍放入共享队列以唤醒它们。
+        // 指定了优先级的任务总是进入共享队列，由优先级队列决定执行顺序
+        Worker worker = priority == NO_PRIORITY ? CURRENT_WORKER.get() : null;
+        if (worker != null && worker.localQueue != null && worker.pool() == this && idleWorkerCount.get() == 0) {
+            worker.localQueue.addFirst(queued);
+            status = SubmitStatus.ACCEPTED;
+        } else if (handOff(queued)) {
+            // 有挂起的空闲线程时直接交给它，不经过任务队列
+            status = SubmitStatus.ACCEPTED;
+        } else {
+            status = offerToQueue(queued, priority) ? SubmitStatus.ACCEPTED : rejectionPolicy.rejectedWork(queued, workQueue);
+            if (status.isQueued()) {
+                // 入队后线程池刚好被关闭：还能从队列中取回就拒绝，否则已经有线程取走执行了
+                if (runState() != RUNNING && workQueue.remove(queued)) {
+                    status = SubmitStatus.REJECTED;
+                } else {
+                    afterEnqueue(1);
                 }
+            }
+        }
+        if (status == SubmitStatus.DISCARDED && work instanceof Future) {
+            ((Future<?>) work).cancel(false);
+        }
+        return status;
+    }
+
+    /**
+     * 批量提交任务：整批任务只做一次入队操作
+     * <p>
+     * 唤醒多少个等待中的线程由队列决定，RingBufferBlockingQueue 最多唤醒与任务数相同数量的等待者。
+     * 有界队列放不下的任务逐个按拒绝策略处理，被拒绝时抛出异常，之前的任务仍然有效
+     *
+     * @param works 真正要执行的任务对象集合
+     * @throws RejectedWorkException 队列已满且拒绝策略拒绝了其中某个任务
+     */
+    public void createNewWorks(Collection<? extends Runnable> works) {
+        if (works.isEmpty()) {
+            return;
+        }
+        if (runState() != RUNNING) {
+            rejectedCount.add(works.size());
+            throw RejectedWorkException.SHUTDOWN;
+        }
+        List<Runnable> queued = new ArrayList<>(works.size());
+        for (Runnable work : works) {
+            queued.add(latencyTracking ? new TimedWork(work) : work);
+        }
 
-                // 等待没有超时（取到了任务就开始执行）
-                log.info("thread {} work for function: {}}", Thread.currentThread().getName(), workToDo);
-                workToDo.run();
+        // 与 createNewWork 相同：工作窃取模式下线程内提交且没有空闲线程时整批放入本地队列
+        Worker worker = CURRENT_WORKER.get();
+        int added;
+        if (worker != null && worker.localQueue != null && worker.pool() == this && idleWorkerCount.get() == 0) {
+            worker.localQueue.addAll(queued);
+            added = queued.size();
+        } else if (workQueue.remainingCapacity() == Integer.MAX_VALUE) {
+            // 无界队列整批放入（LinkedBlockingDeque 只加一次锁）
+            workQueue.addAll(queued);
+            added = queued.size();
+            afterEnqueue(added);
+        } else if (workQueue instanceof RingBufferBlockingQueue) {
+            // 环形队列一次 CAS 认领放得下的部分
+            added = ((RingBufferBlockingQueue<Runnable>) workQueue).offerAll(queued);
+            afterEnqueue(added);
+        } else {
+            added = 0;
+        }
 
-            } catch (Exception e) {
-                log.error(e.getMessage());
+        // 与 tryCreateNewWork 相同，入队后线程池刚好被关闭时取回还没有被执行的任务
+        if (runState() != RUNNING && added > 0 && (worker == null || worker.localQueue == null)) {
+            int removed = 0;
+            for (int j = 0; j < added; j++) {
+                if (workQueue.remove(queued.get(j))) {
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                rejectedCount.add(removed);
+                throw RejectedWorkException.SHUTDOWN;
+            }
+        }
+
+        int i = 0;
+        for (Runnable work : works) {
+            if (i < added) {
+                onSubmitted(work, SubmitStatus.ACCEPTED);
+            } else {
+                // 放不下的任务逐个走拒绝策略
+                SubmitStatus status = workQueue.offer(queued.get(i)) ? SubmitStatus.ACCEPTED
+                        : rejectionPolicy.rejectedWork(queued.get(i), workQueue);
+                if (status.isQueued()) {
+                    afterEnqueue(1);
+                }
+                if (status == SubmitStatus.DISCARDED && work instanceof Future) {
+                    ((Future<?>) work).cancel(false);
+                }
+                onSubmitted(work, status);
+                if (status == SubmitStatus.REJECTED) {
+                    throw rejection();
+                }
             }
+            i++;
         }
     }
 
-    private void createNewThread() {
-        nowThreadCount.incrementAndGet();
-        Thread t = new Thread(this::workerFunction, String.valueOf(threadIncrementThreadName.incrementAndGet()));
-        t.start();
+    /**
+     * @param works 真正要执行的任务对象数组
+     */
+    public void createNewWorks(Runnable[] works) {
+        createNewWorks(Arrays.asList(works));
     }
 
-    // 中控线程
+
     /**
-     * 当一个任务等待waitMilliseconds时间后没有被消费且等待后任务队列容量超过线程池最大数量后再扩容
+     * 在线程池任务中包住阻塞调用，例如：
+     * StretchableThreadPool.blocking(() -> { Thread.sleep(5000); return null; })
+     * <p>
+     * 阻塞期间本线程不计入线程数上限，队列中有任务而没有空闲线程时立即补充一个线程，之后提交的任务也可以继续扩容；
+     * 阻塞结束后多出的线程执行完手上的任务后退出。补偿线程最多 maxCompensationThreads 个。
+     * 不在线程池的工作线程中调用时（包括 THREAD_PER_TASK 模式的任务线程）直接执行
      *
-     * @param waitMilliseconds 等待毫秒数
+     * @param call 阻塞调用
+     * @return call 的返回值
+     * @throws E call 抛出的异常
      */
-    private void startThreadsToExpandCapacity(long waitMilliseconds) {
-        new Thread(() -> {
-            while (true) {
-                try {
-                    // 当前线程先等一等看看任务会不会被迅速消费
-                    TimeUnit.MILLISECONDS.sleep(waitMilliseconds);
-                    // 获取等待后的任务容量
-                    int afterSize = workQueue.size();
-                    // 如果可以扩容线程池则扩容
-                    if (afterSize > this.maxThreadCount) {
-                        if (this.nowThreadCount.get() + 1 <= this.maxThreadCount) {
-                            this.createNewThread();
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error(e.getMessage());
+    public static <T, E extends Exception> T blocking(BlockingCall<T, E> call) throws E {
+        Worker worker = CURRENT_WORKER.get();
+        // 嵌套调用只在最外层计数
+        if (worker == null || worker.blocking) {
+            return call.call();
+        }
+        StretchableThreadPool pool = worker.pool();
+        worker.blocking = true;
+        pool.beginBlocking(worker);
+        try {
+            return call.call();
+        } finally {
+            worker.blocking = false;
+            pool.blockedWorkerCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 不再接收新任务，已提交的任务（包括队列中的）继续执行完，之后所有线程退出
+     * <p>
+     * 还没有到期的定时任务与周期任务会被取消。不等待任务执行完，需要等待时调用 awaitTermination
+     */
+    @Override
+    public void shutdown() {
+        advanceRunState(SHUTDOWN);
+        stopTimingWheel();
+        stopSizingController();
+        interruptIdleWorkers();
+        tryTerminate();
+    }
+
+    /**
+     * 不再接收新任务，中断正在执行的任务，队列中还没有开始执行的任务不再执行
+     *
+     * @return 队列中没有执行的任务
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        advanceRunState(STOP);
+        stopTimingWheel();
+        stopSizingController();
+        stopStallWatchdog();
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+        for (Thread t : taskThreads) {
+            t.interrupt();
+        }
+        List<Runnable> pending = new ArrayList<>();
+        workQueue.drainTo(pending);
+        for (Worker worker : workers) {
+            if (worker.localQueue != null) {
+                for (Runnable work; (work = worker.localQueue.pollFirst()) != null; ) {
+                    pending.add(work);
                 }
             }
-        }).start();
+            drainPending(worker.pending, pending);
+        }
+        drainPending(stoppedWork, pending);
+        // 线程退出前把手上的任务放入 stoppedWork 后检查该标记：放入早于标记写入的，由下面的第二次收集取走；否则线程看到标记，自己执行
+        pendingCollected = true;
+        for (Worker worker : workers) {
+            drainPending(worker.pending, pending);
+        }
+        drainPending(stoppedWork, pending);
+        // 按 key 串行的队列换成其中还没有执行的任务，包括正在执行的队列中剩下的任务
+        pending.removeIf(work -> work instanceof KeyedQueue);
+        for (KeyedQueue queue : keyedQueues.values()) {
+            queue.drainTo(pending);
+        }
+        // 返回提交时的原始任务对象
+        pending.replaceAll(work -> work instanceof TimedWork ? ((TimedWork) work).work : work);
+        tryTerminate();
+        return pending;
+    }
+
+    private static void drainPending(Queue<Runnable> works, List<Runnable> pending) {
+        for (Runnable work; (work = works.poll()) != null; ) {
+            pending.add(work);
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return runState() != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return runState() == TERMINATED;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        stateLock.lock();
+        try {
+            while (runState() != TERMINATED) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = termination.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * 设置任务队列已满时的拒绝策略，默认 RejectionPolicy.abort()
+     * <p>
+     * 只有传入有界队列时才会触发；工作窃取模式下线程内提交到本地队列的任务不受限制
+     */
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = Objects.requireNonNull(rejectionPolicy);
+    }
+
+    /**
+     * 设置为 blocking 中阻塞的线程最多额外创建的补偿线程数，默认等于最大线程数，0 表示不补偿
+     */
+    public void setMaxCompensationThreads(int maxCompensationThreads) {
+        if (maxCompensationThreads < 0) {
+            throw new IllegalArgumentException("maxCompensationThreads must not be negative: " + maxCompensationThreads);
+        }
+        this.maxCompensationThreads = maxCompensationThreads;
+    }
+
+    /**
+     * 设置线程每次从共享队列批量取出的最大任务数，适合大量执行时间很短的任务
+     * <p>
+     * 默认 1，即每次只 poll 一个任务；批量过大会让任务集中在少数线程上执行
+     *
+     * @param drainBatchSize 每次最多取出的任务数
+     */
+    public void setDrainBatchSize(int drainBatchSize) {
+        if (drainBatchSize < 1) {
+            throw new IllegalArgumentException("drainBatchSize must be positive: " + drainBatchSize);
+        }
+        this.drainBatchSize = drainBatchSize;
+    }
+
+    /**
+     * 注册线程池事件监听器，任务事件每 sampleInterval 个抽样回调一次（随机抽样）
+     * <p>
+     * 不注册时线程池不输出任何任务级别的日志，需要逐个任务的日志时可以注册 Slf4jPoolEventListener
+     *
+     * @param listener       监听器，为 null 时取消注册
+     * @param sampleInterval 采样间隔，1 表示每个事件都回调，10000 表示平均每一万个回调一次
+     */
+    public void setPoolEventListener(PoolEventListener listener, int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval must be positive: " + sampleInterval);
+        }
+        this.eventSampling = listener == null ? null : new EventSampling(listener, sampleInterval);
+    }
+
+    /**
+     * 注册线程数调节策略，之后每隔 interval 采样一次排队等待时间、吞吐量与线程利用率，由 sizer 给出目标线程数
+     * <p>
+     * 注册后提交任务时不再按排队任务数扩容到最大线程数，线程数只在 [核心线程数, 最大线程数] 内跟随目标值变化。
+     * 注册期间总是开启耗时统计，取消注册后恢复为 setLatencyTrackingEnabled 设置的值；THREAD_PER_TASK 模式下没有常驻线程，不支持
+     *
+     * @param sizer    调节策略，例如 new LatencySloSizer(10, TimeUnit.MILLISECONDS)，为 null 时取消注册
+     * @param interval 采样周期
+     * @param unit     interval 的时间单位
+     */
+    public void setPoolSizer(PoolSizer sizer, long interval, TimeUnit unit) {
+        if (concurrencyPermits != null) {
+            throw new IllegalStateException("pool sizer is not supported in THREAD_PER_TASK mode");
+        }
+        if (sizer != null && interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        SizingController previous;
+        stateLock.lock();
+        try {
+            previous = sizingController;
+            sizingController = null;
+            targetThreadCount = -1;
+            if (sizer != null && runState() == RUNNING) {
+                targetThreadCount = Math.max(coreThreadCount, Math.min(maxThreadCount, nowThreadCount()));
+                sizingController = new SizingController(sizer, unit.toNanos(interval));
+                sizingController.start();
+            }
+            latencyTracking = latencyTrackingEnabled || sizingController != null;
+        } finally {
+            stateLock.unlock();
+        }
+        if (previous != null) {
+            previous.stop();
+        }
+        // 回到按空闲超时回收的模式，多出核心线程数的线程交给回收线程
+        if (sizer == null && nowThreadCount() > coreThreadCount) {
+            IdleReaper.register(this);
+        }
+    }
+
+    /**
+     * 开启卡顿检测：检测线程每隔 threshold / 4 检查一次各线程正在执行的任务
+     * <p>
+     * 任务执行超过 threshold 时输出 WARN 日志及该线程的调用栈（每个任务一次），并回调监听器的 onWorkStalled；
+     * 所有线程都执行超时且卡在 BLOCKED / WAITING 状态而排队任务还在增加时，另外输出整个线程池卡住的日志并回调 onPoolStalled。
+     * 任务热路径上只多一次本线程计数的写入。THREAD_PER_TASK 模式下没有常驻线程，不支持
+     *
+     * @param threshold  任务执行多久算卡住，小于等于 0 时关闭检测
+     * @param unit       threshold 的时间单位
+     * @param compensate 是否为卡在 BLOCKED / WAITING 状态的线程补充线程（与 blocking 共用 maxCompensationThreads 上限）
+     */
+    public void setStallWatchdog(long threshold, TimeUnit unit, boolean compensate) {
+        if (concurrencyPermits != null) {
+            throw new IllegalStateException("stall watchdog is not supported in THREAD_PER_TASK mode");
+        }
+        StallWatchdog previous;
+        stateLock.lock();
+        try {
+            previous = stallWatchdog;
+            stallWatchdog = null;
+            if (threshold > 0 && runState() < STOP) {
+                stallWatchdog = new StallWatchdog(unit.toNanos(threshold), compensate);
+                stallWatchdog.start();
+            }
+        } finally {
+            stateLock.unlock();
+        }
+        if (previous != null) {
+            previous.stop();
+        }
+        stalledWorkerCount = 0;
+    }
+
+    /**
+     * 开启或关闭任务排队等待时间与执行耗时的统计
+     * <p>
+     * 开启后每次提交会多一次包装对象分配和 System.nanoTime 调用，默认关闭。
+     * 线程数调节策略依赖这些统计，注册期间关闭不会立即生效，取消注册后才关闭
+     */
+    public void setLatencyTrackingEnabled(boolean enabled) {
+        stateLock.lock();
+        try {
+            latencyTrackingEnabled = enabled;
+            latencyTracking = enabled || sizingController != null;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * 获取线程池运行状态快照：计数直接读取，耗时直方图由各线程的直方图合并得到
+     */
+    public PoolStats getStats() {
+        List<LatencyHistogram> queueWaitTimes = new ArrayList<>();
+        List<LatencyHistogram> executionTimes = new ArrayList<>();
+        queueWaitTimes.add(sharedStats.queueWaitTime);
+        executionTimes.add(sharedStats.executionTime);
+        int queueDepth = workQueue.size();
+        for (Worker worker : workers) {
+            queueWaitTimes.add(worker.stats.queueWaitTime);
+            executionTimes.add(worker.stats.executionTime);
+            if (worker.localQueue != null) {
+                queueDepth += worker.localQueue.size();
+            }
+        }
+        return new PoolStats(submittedCount.sum(), completedCount.sum(), failedCount.sum(), rejectedCount.sum(),
+                nowThreadCount(), peakThreadCount.get(),
+                createdThreadCount.sum(), destroyedThreadCount.sum(), queueDepth,
+                LatencyHistogram.Snapshot.merge(queueWaitTimes),
+                LatencyHistogram.Snapshot.merge(executionTimes));
+    }
+
+    /**
+     * 线程池中每个线程真正在执行的方法
+     */
+    private void workerFunction(Worker worker) {
+        CURRENT_WORKER.set(worker);
+        try {
+            runWorker(worker);
+        } finally {
+            workers.remove(worker);
+            sharedStats.add(worker.stats);
+            destroyedThreadCount.increment();
+            fireThreadTerminated();
+            CURRENT_WORKER.remove();
+            tryTerminate();
+        }
+    }
+
+    private void runWorker(Worker worker) {
+        while (true) {
+            try {
+                // 空闲超时被回收的线程名额已经释放，先于其他退出路径处理，不能再释放一次。
+                // 执行完本地队列中派生的任务后退出（shutdownNow 之后本地队列由 shutdownNow 取走）
+                if (worker.retired) {
+                    Runnable local = worker.localQueue == null || runState() >= STOP ? null : worker.localQueue.pollFirst();
+                    if (local == null) {
+                        log.info("* thread {} end, left {} threads in pool", Thread.currentThread().getName(), nowThreadCount());
+                        // 退出前后可能刚好有任务入队且提交方看到了本线程处于空闲，需要补一个线程
+                        expandIfNeeded(0);
+                        break;
+                    }
+                    worker.runLock.lock();
+                    try {
+                        clearStaleInterrupt();
+                        worker.taskSequence++;
+                        runWork(worker.stats, local);
+                    } finally {
+                        worker.runLock.unlock();
+                    }
+                    continue;
+                }
+
+                // shutdownNow 之后不再取任务，手上还没有执行的任务交给 shutdownNow
+                if (runState() >= STOP) {
+                    handOverPending(worker);
+                    releaseThreadSlot();
+                    break;
+                }
+
+                // 调节策略降低了目标线程数或阻塞的线程恢复了，多出的线程执行完手上的任务后退出。
+                // 本地队列只有本线程会放入，取空之后才退出，否则退出后其他线程再也窃取不到其中的任务
+                if (worker.pending.isEmpty() && (worker.localQueue == null || worker.localQueue.isEmpty()) && tryRetire()) {
+                    log.info("* thread {} end, left {} threads in pool (limit {})",
+                            Thread.currentThread().getName(), nowThreadCount(), threadLimit());
+                    break;
+                }
+
+                // 批量模式下先一次从共享队列取出一批任务连续执行，队列里没有任务时才去超时等待
+                if (drainBatchSize > 1 && (worker.localQueue == null || worker.localQueue.isEmpty()) && runBatch(worker)) {
+                    continue;
+                }
+
+                // 尝试获取任务，没有任务就挂起等待
+                Runnable workToDo = worker.localQueue == null
+                        ? pollOrWait(worker)
+                        : findWorkOrWait(worker);
+
+                // 没取到任务：被回收、被中断或线程池已关闭
+                if (workToDo == null) {
+
+                    // 被回收时回到循环开头按已释放名额的方式退出
+                    if (worker.retired) {
+                        continue;
+                    }
+
+                    // 线程池关闭后队列中没有任务了就退出，不再保留核心线程
+                    if (runState() >= SHUTDOWN && (runState() >= STOP || workQueue.isEmpty()
+                            && (worker.localQueue == null || worker.localQueue.isEmpty()))) {
+                        releaseThreadSlot();
+                        break;
+                    }
+
+                    continue;
+                }
+
+                // 取到了任务就开始执行
+                worker.runLock.lock();
+                try {
+                    clearStaleInterrupt();
+                    worker.taskSequence++;
+                    runWork(worker.stats, workToDo);
+                } finally {
+                    worker.runLock.unlock();
+                }
+
+            } catch (Exception e) {
+                log.error(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 一次 drainTo 取出最多 drainBatchSize 个任务并依次执行
+     *
+     * @return 是否取到了任务
+     */
+    private boolean runBatch(Worker worker) {
+        if (workQueue.drainTo(worker.pending, drainBatchSize) == 0) {
+            return false;
+        }
+        runPending(worker, worker.pending);
+        return true;
+    }
+
+    /**
+     * 依次执行已经取出但还没有执行的任务；shutdownNow 之后不再开始新的任务，剩下的由 shutdownNow 取走
+     */
+    private void runPending(Worker worker, Queue<Runnable> works) {
+        worker.runLock.lock();
+        try {
+            clearStaleInterrupt();
+            for (Runnable work; (runState() < STOP || pendingCollected) && (work = works.poll()) != null; ) {
+                worker.taskSequence++;
+                runWork(worker.stats, work);
+            }
+        } finally {
+            worker.runLock.unlock();
+        }
+    }
+
+    /**
+     * shutdownNow 之后退出前交出手上还没有执行的任务：先放入 stoppedWork 再检查 pendingCollected，
+     * shutdownNow 还没有收集完就由它取走；已经收集完（交接或批量取出与 shutdownNow 同时发生）则自己执行，不能丢失
+     */
+    private void handOverPending(Worker worker) {
+        for (Runnable work; (work = worker.pending.poll()) != null; ) {
+            stoppedWork.offer(work);
+        }
+        if (pendingCollected && !stoppedWork.isEmpty()) {
+            runPending(worker, stoppedWork);
+        }
+    }
+
+    /**
+     * 执行任务前清除 shutdown 唤醒空闲线程时留下的中断标记；已经 shutdownNow 的话保留中断，让任务尽快结束
+     */
+    private void clearStaleInterrupt() {
+        if (Thread.interrupted() && runState() >= STOP) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 执行单个任务，任务抛出的异常不影响同一批中后续任务的执行
+     */
+    private void runWork(WorkStats stats, Runnable work) {
+        // 按 key 串行的队列只是容器，其中的任务在 KeyedQueue.run 中逐个统计
+        if (work instanceof KeyedQueue) {
+            work.run();
+            return;
+        }
+        boolean timed = latencyTracking;
+        long start = 0;
+        if (timed) {
+            start = System.nanoTime();
+            if (work instanceof TimedWork) {
+                stats.queueWaitTime.record(start - ((TimedWork) work).enqueueNanos);
+            }
+        }
+        EventSampling events = eventSampling;
+        boolean sampled = events != null && events.sample();
+        if (sampled) {
+            events.fireBefore(work);
+        }
+        Throwable failure = null;
+        try {
+            work.run();
+            // WorkFuture 会捕获任务异常，需要单独判断
+            Runnable task = work instanceof TimedWork ? ((TimedWork) work).work : work;
+            if (task instanceof WorkFuture && ((WorkFuture<?>) task).isCompletedExceptionally()) {
+                failedCount.increment();
+            } else {
+                completedCount.increment();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            failedCount.increment();
+            log.error(e.getMessage());
+        } finally {
+            if (timed) {
+                stats.executionTime.record(System.nanoTime() - start);
+            }
+            if (sampled) {
+                events.fireAfter(work, failure);
+            }
+        }
+    }
+
+    /**
+     * 共享队列模式下取任务：队列里有任务时直接取走，没有时登记为空闲再挂起等待
+     */
+    private Runnable pollOrWait(Worker worker) {
+        Runnable work = worker.pending.poll();
+        if (work == null) {
+            work = workQueue.poll();
+        }
+        if (work != null || runState() >= SHUTDOWN) {
+            return work;
+        }
+        return awaitWork(worker, false);
+    }
+
+    /**
+     * 工作窃取模式下取任务的顺序：本地队列头部 -> 共享队列 -> 其他线程本地队列尾部 -> 在共享队列上超时等待
+     */
+    private Runnable findWorkOrWait(Worker worker) {
+        Runnable work = worker.pending.poll();
+        if (work == null) {
+            work = worker.localQueue.pollFirst();
+        }
+        if (work == null) {
+            work = workQueue.poll();
+        }
+        if (work == null) {
+            work = steal(worker);
+        }
+        if (work != null || runState() >= SHUTDOWN) {
+            return work;
+        }
+
+        return awaitWork(worker, true);
+    }
+
+    /**
+     * 空闲线程等待任务：压入空闲线程栈顶后再检查一次队列，没有任务就无限期挂起，直到提交方直接交来任务、
+     * 唤醒本线程去取队列中的任务、被 shutdown 中断，或者被回收线程判定为超时
+     * <p>
+     * 先登记为空闲再检查，登记之后其他线程提交的任务都会进入共享队列并唤醒空闲线程，或直接交给空闲线程，不会漏掉。
+     * 空闲线程数在写入 WAITING 时增加，由把 WAITING 替换掉的一方减少：被交接或唤醒时提交方立即减少，
+     * 紧接着提交的任务就能看到线程已经不空闲，需要时扩容
+     * <p>
+     * 栈是后进先出的：新任务总是交给最近空闲的线程，少数线程保持繁忙、缓存是热的；栈底的线程最久没有执行任务，
+     * 空闲超过 maxWaitMilliseconds 后由回收线程让它退出（见 reapIdleWorkers）。
+     * 等待本身不设超时，核心线程空闲时不会被定时唤醒
+     *
+     * @param steal 检查队列时是否也从其他线程的本地队列窃取
+     * @return 取到的任务，被回收或被中断时返回 null
+     */
+    private Runnable awaitWork(Worker worker, boolean steal) {
+        worker.idleSince = System.nanoTime();
+        while (true) {
+            // 先写入 WAITING 再入栈，出栈方先出栈再 CAS handoff，保证不会漏掉唤醒
+            idleWorkerCount.incrementAndGet();
+            worker.handoff = WAITING;
+            idleWorkers.offerFirst(worker);
+            Runnable work = workQueue.poll();
+            if (work == null && steal) {
+                work = steal(worker);
+            }
+            while (work == null && worker.handoff == WAITING && runState() < SHUTDOWN
+                    && !Thread.currentThread().isInterrupted()) {
+                LockSupport.park(this);
+            }
+
+            Object handedOff = HANDOFF.getAndSet(worker, null);
+            if (handedOff == WAITING) {
+                // 没有被出栈方取走，自己出栈
+                idleWorkerCount.decrementAndGet();
+                idleWorkers.removeFirstOccurrence(worker);
+            } else if (handedOff == RETIRE) {
+                // 回收线程判定本线程空闲超时；同时取到的任务要执行完再退出。名额释放失败（线程数已经回到核心线程数）就继续等待
+                if (tryRetireIdle()) {
+                    worker.retired = true;
+                    return work;
+                }
+            } else if (handedOff instanceof Runnable) {
+                // 检查队列取到任务的同时又被交接了一个任务，下一次取任务时先执行它
+                if (work != null) {
+                    worker.pending.offer((Runnable) handedOff);
+                    return work;
+                }
+                return (Runnable) handedOff;
+            }
+            if (work != null) {
+                return work;
+            }
+            // shutdown 中断空闲线程，回到循环中检查运行状态
+            if (Thread.interrupted() || runState() >= SHUTDOWN) {
+                return null;
+            }
+            // 被唤醒去取队列中的任务但被其他线程抢先：重新入栈等待，空闲时间继续累计
+        }
+    }
+
+    /**
+     * 从空闲线程栈顶取出一个仍在等待的线程，把 value（任务或 null）交给它并唤醒
+     */
+    private boolean signalIdleWorker(Object value) {
+        Worker worker;
+        while ((worker = idleWorkers.pollFirst()) != null) {
+            if (HANDOFF.compareAndSet(worker, WAITING, value)) {
+                idleWorkerCount.decrementAndGet();
+                LockSupport.unpark(worker.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把任务直接交给一个挂起的空闲线程
+     */
+    private boolean handOff(Runnable work) {
+        return !idleWorkers.isEmpty() && signalIdleWorker(work);
+    }
+
+    /**
+     * 从一个随机位置开始遍历其他线程，窃取其本地队列尾部（最早放入）的任务
+     */
+    private Runnable steal(Worker thief) {
+        Object[] snapshot = workers.toArray();
+        int n = snapshot.length;
+        if (n <= 1) {
+            return null;
+        }
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            Worker victim = (Worker) snapshot[(start + i) % n];
+            if (victim != thief) {
+                Runnable work = victim.localQueue.pollLast();
+                if (work != null) {
+                    return work;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean offerToQueue(Runnable queued, int priority) {
+        if (priority != NO_PRIORITY && workQueue instanceof PriorityLaneQueue) {
+            return ((PriorityLaneQueue) workQueue).offer(queued, priority);
+        }
+        return workQueue.offer(queued);
+    }
+
+    /**
+     * 任务放入共享队列之后：THREAD_PER_TASK 模式下调度执行，否则判断是否需要扩容
+     */
+    private void afterEnqueue(int count) {
+        if (count <= 0) {
+            return;
+        }
+        if (concurrencyPermits != null) {
+            dispatchPending();
+            return;
+        }
+        // 空闲线程挂起在自己身上而不是队列上，需要逐个唤醒
+        for (int i = 0; i < count && !idleWorkers.isEmpty(); i++) {
+            if (!signalIdleWorker(null)) {
+                break;
+            }
+        }
+        expandIfNeeded(count);
+    }
+
+    /**
+     * 按拒绝原因选择预先创建的异常：线程池已关闭，或者队列已满且拒绝策略拒绝了该任务
+     */
+    RejectedWorkException rejection() {
+        return runState() == RUNNING ? RejectedWorkException.QUEUE_FULL : RejectedWorkException.SHUTDOWN;
+    }
+
+    /**
+     * 记录提交结果并按采样通知监听器
+     */
+    private void onSubmitted(Runnable work, SubmitStatus status) {
+        if (status.isQueued()) {
+            submittedCount.increment();
+        }
+        if (status != SubmitStatus.ACCEPTED && status != SubmitStatus.CALLER_RAN) {
+            // DISCARDED_OLDEST 时被丢弃的是队列中最早的任务
+            rejectedCount.increment();
+        }
+        EventSampling events = eventSampling;
+        if (events != null && events.sample()) {
+            if (status.isQueued()) {
+                events.fireSubmitted(work);
+            } else if (status != SubmitStatus.CALLER_RAN) {
+                events.fireRejected(work, status);
+            }
+        }
+    }
+
+    /**
+     * 提交任务后判断是否需要扩容：排队的任务比正在等待的空闲线程多时立即增加线程，不再等待定时检测
+     *
+     * @param submitted 本次提交的任务数
+     */
+    private void expandIfNeeded(int submitted) {
+        if (nowThreadCount() >= threadLimit()) {
+            return;
+        }
+        int idle = idleWorkerCount.get();
+        // 没有空闲线程时不需要再去读队列长度（LinkedBlockingDeque 的 size 需要加锁）
+        int pending = idle == 0 && submitted > 0 ? submitted : workQueue.size();
+        for (int i = pending - idle; i > 0; i--) {
+            if (!tryAddThread()) {
+                break;
+            }
+            log.info("* thread pool extended, now has {} threads", nowThreadCount());
+        }
+    }
+
+    /**
+     * 用 CAS 占用一个线程名额后再创建线程，多个提交方同时扩容也不会超过最大线程数（注册了调节策略时为目标线程数）
+     *
+     * @return 是否成功创建
+     */
+    private boolean tryAddThread() {
+        long c;
+        int count;
+        do {
+            c = ctl.get();
+            count = threadCountOf(c);
+            // SHUTDOWN 状态下仍然可以补充线程把队列中的任务执行完
+            if (count >= threadLimit() || runStateOf(c) >= STOP) {
+                return false;
+            }
+        } while (!ctl.compareAndSet(c, c + 1));
+        createNewThread();
+        // 超过核心线程数的线程空闲超时后由回收线程回收
+        if (count >= coreThreadCount && targetThreadCount < 0) {
+            IdleReaper.register(this);
+        }
+        return true;
+    }
+
+    /**
+     * 用 CAS 释放一个线程名额，线程数已经不超过上限时返回 false，多个线程同时退出也不会低于上限
+     */
+    private boolean tryRetire() {
+        long c;
+        do {
+            c = ctl.get();
+            if (threadCountOf(c) <= threadLimit()) {
+                return false;
+            }
+        } while (!ctl.compareAndSet(c, c - 1));
+        return true;
+    }
+
+    /**
+     * 被回收线程判定为空闲超时的线程用 CAS 释放自己的名额：线程池仍在运行、没有调节策略且线程数多于核心线程数时才成功，
+     * 大量多余线程同时退出时各自一次 CAS，互不等待
+     */
+    private boolean tryRetireIdle() {
+        long c;
+        do {
+            c = ctl.get();
+            if (!isSurplus(c)) {
+                return false;
+            }
+        } while (!ctl.compareAndSet(c, c - 1));
+        return true;
+    }
+
+    /**
+     * 线程退出时释放名额：线程数为 0 时不再减少，只改动低位的线程数，不会借位改动运行状态
+     */
+    private void releaseThreadSlot() {
+        long c;
+        do {
+            c = ctl.get();
+            if (threadCountOf(c) == 0) {
+                log.error("thread slot released twice, thread count is already 0");
+                return;
+            }
+        } while (!ctl.compareAndSet(c, c - 1));
+    }
+
+    /**
+     * THREAD_PER_TASK 模式下为任务线程占用名额：并发数已经由信号量限制，低位不会进位到运行状态，不需要检查上限；
+     * 与 tryAddThread 相同，在同一次 CAS 中检查运行状态，shutdownNow 之后（包括已经 TERMINATED）不再占用
+     *
+     * @return 是否成功占用
+     */
+    private boolean tryAcquireTaskSlot() {
+        long c;
+        do {
+            c = ctl.get();
+            if (runStateOf(c) >= STOP) {
+                return false;
+            }
+        } while (!ctl.compareAndSet(c, c + 1));
+        return true;
+    }
+
+    /**
+     * 回收线程调用：从空闲线程栈底开始，通知空闲超过 maxWaitMilliseconds 的线程退出，最多通知多出核心线程数的个数。
+     * 先用 CAS 把线程的 handoff 从 WAITING 改为 RETIRE，提交方就不会再把任务交给它；被通知的线程醒来后各自用 CAS 释放名额
+     *
+     * @return 距离下一次需要检查的纳秒数，至少 MIN_REAP_DELAY_NANOS；线程数已经不超过核心线程数（或由调节策略决定线程数、线程池已关闭）时返回 -1
+     */
+    long reapIdleWorkers(long now) {
+        long c = ctl.get();
+        if (!isSurplus(c)) {
+            return -1;
+        }
+        long timeout = TimeUnit.MILLISECONDS.toNanos(maxWaitMilliseconds);
+        for (int surplus = threadCountOf(c) - coreThreadCount; surplus > 0; surplus--) {
+            Worker bottom = idleWorkers.peekLast();
+            if (bottom == null) {
+                // 多出的线程都在执行任务
+                return Math.max(timeout, MIN_REAP_DELAY_NANOS);
+            }
+            long idle = now - bottom.idleSince;
+            if (idle < timeout) {
+                return Math.max(timeout - idle, MIN_REAP_DELAY_NANOS);
+            }
+            if (!HANDOFF.compareAndSet(bottom, WAITING, RETIRE)) {
+                // 栈底线程刚好被唤醒，正在自己出栈
+                break;
+            }
+            idleWorkerCount.decrementAndGet();
+            idleWorkers.removeLastOccurrence(bottom);
+            LockSupport.unpark(bottom.thread);
+        }
+        // 被通知的线程还没有释放名额，稍后再检查
+        return MIN_REAP_DELAY_NANOS;
+    }
+
+    /**
+     * 是否有需要回收线程检查的多余线程
+     */
+    boolean hasSurplusThreads() {
+        return isSurplus(ctl.get());
+    }
+
+    private boolean isSurplus(long c) {
+        return targetThreadCount < 0 && runStateOf(c) == RUNNING && threadCountOf(c) > coreThreadCount;
+    }
+
+    private static long ctlOf(int runState, int threadCount) {
+        return (long) runState << COUNT_BITS | threadCount;
+    }
+
+    private static int runStateOf(long c) {
+        return (int) (c >>> COUNT_BITS);
+    }
+
+    private static int threadCountOf(long c) {
+        return (int) (c & COUNT_MASK);
+    }
+
+    /**
+     * 线程池运行状态，只能从小往大变化
+     */
+    private int runState() {
+        return runStateOf(ctl.get());
+    }
+
+    private int nowThreadCount() {
+        return threadCountOf(ctl.get());
+    }
+
+    /**
+     * 线程数上限：最大线程数（注册了调节策略时为目标线程数），加上为阻塞线程创建的补偿线程
+     */
+    private int threadLimit() {
+        int target = targetThreadCount;
+        int limit = target < 0 ? maxThreadCount : target;
+        int blocked = blockedWorkerCount.get() + stalledWorkerCount;
+        return blocked == 0 ? limit : limit + Math.min(blocked, maxCompensationThreads);
+    }
+
+    /**
+     * 线程进入阻塞调用：没有空闲线程接手排队的任务时立即补偿一个线程
+     */
+    private void beginBlocking(Worker worker) {
+        blockedWorkerCount.incrementAndGet();
+        boolean pending = !workQueue.isEmpty() || worker.localQueue != null && !worker.localQueue.isEmpty();
+        if (pending && idleWorkerCount.get() == 0 && tryAddThread()) {
+            log.info("* thread {} blocked, compensated with a new thread, now has {} threads",
+                    Thread.currentThread().getName(), nowThreadCount());
+        }
+    }
+
+    private void createNewThread() {
+        Worker worker = new Worker(schedulingMode == SchedulingMode.WORK_STEALING);
+        Thread t = newThread(() -> workerFunction(worker));
+        worker.thread = t;
+        workers.add(worker);
+        onThreadCreated(t);
+        t.start();
+    }
+
+    private void onThreadCreated(Thread thread) {
+        createdThreadCount.increment();
+        peakThreadCount.accumulateAndGet(nowThreadCount(), Math::max);
+        EventSampling events = eventSampling;
+        if (events != null) {
+            events.fireThreadCreated(thread);
+        }
+    }
+
+    private void fireThreadTerminated() {
+        EventSampling events = eventSampling;
+        if (events != null) {
+            events.fireThreadTerminated(Thread.currentThread());
+        }
+    }
+
+    private Thread newThread(Runnable body) {
+        if (threadFactory != null) {
+            return threadFactory.newThread(body);
+        }
+        return new Thread(body, String.valueOf(threadIncrementThreadName.incrementAndGet()));
+    }
+
+    /**
+     * THREAD_PER_TASK 模式：只要还有并发名额就从队列取出任务，为每个任务新建一个线程执行
+     * <p>
+     * 提交方在入队后、执行完的线程在归还名额后都会调用，因此不会有任务留在队列中无人执行
+     */
+    private void dispatchPending() {
+        while (runState() < STOP && !workQueue.isEmpty() && concurrencyPermits.tryAcquire()) {
+            // 先占用线程名额再取任务：名额占用成功后线程池在任务线程结束前不会进入 TERMINATED
+            if (!tryAcquireTaskSlot()) {
+                concurrencyPermits.release();
+                return;
+            }
+            Runnable work = workQueue.poll();
+            if (work == null) {
+                // 任务被其他调用方取走了，归还名额后重新检查；这期间 shutdownNow 可能因为这个名额没能终止
+                releaseThreadSlot();
+                concurrencyPermits.release();
+                tryTerminate();
+                continue;
+            }
+            try {
+                Thread t = newThread(() -> {
+                    Thread current = Thread.currentThread();
+                    taskThreads.add(current);
+                    try {
+                        // 登记之前 shutdownNow 已经遍历过 taskThreads 的话自己补上中断
+                        if (runState() >= STOP) {
+                            current.interrupt();
+                        }
+                        runWork(sharedStats, work);
+                    } finally {
+                        taskThreads.remove(current);
+                        releaseThreadSlot();
+                        destroyedThreadCount.increment();
+                        fireThreadTerminated();
+                        concurrencyPermits.release();
+                        dispatchPending();
+                        tryTerminate();
+                    }
+                });
+                onThreadCreated(t);
+                t.start();
+            } catch (RuntimeException | OutOfMemoryError e) {
+                // 线程创建失败时归还名额，任务放回队列等待下次调度
+                releaseThreadSlot();
+                concurrencyPermits.release();
+                workQueue.add(work);
+                throw e;
+            }
+        }
+    }
+
+    private static long deadlineAfter(long delay, TimeUnit unit) {
+        return System.nanoTime() + Math.min(Math.max(0, unit.toNanos(delay)), MAX_DELAY_NANOS);
+    }
+
+    private <W extends ScheduledWork<?>> W scheduleWork(W work) {
+        if (runState() != RUNNING) {
+            onSubmitted(work, SubmitStatus.REJECTED);
+            throw RejectedWorkException.SHUTDOWN;
+        }
+        timingWheel().schedule(work);
+        // 与 shutdown 并发时 shutdown 可能已经清空过时间轮，由这里取消
+        if (runState() != RUNNING) {
+            work.cancel(false);
+        }
+        return work;
+    }
+
+    private TimingWheel timingWheel() {
+        TimingWheel wheel = timingWheel;
+        if (wheel == null) {
+            stateLock.lock();
+            try {
+                wheel = timingWheel;
+                if (wheel == null) {
+                    wheel = new TimingWheel(TIMER_TICK_NANOS, this::dispatchScheduled,
+                            "timer-" + threadIncrementThreadName.incrementAndGet());
+                    timingWheel = wheel;
+                }
+            } finally {
+                stateLock.unlock();
+            }
+        }
+        return wheel;
+    }
+
+    /**
+     * 停止时间轮并等待其取消完未到期的任务，shutdown 返回时这些任务的 Future 都已是取消状态
+     */
+    private void stopTimingWheel() {
+        TimingWheel wheel;
+        stateLock.lock();
+        try {
+            wheel = timingWheel;
+        } finally {
+            stateLock.unlock();
+        }
+        if (wheel != null) {
+            wheel.stop();
+            try {
+                wheel.awaitStopped();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 时间轮驱动线程调用：把到期的定时任务放入任务队列
+     *
+     * @return 任务队列已满时返回 false，时间轮下一个 tick 再重试，到期的任务不会被丢弃
+     */
+    private boolean dispatchScheduled(ScheduledWork<?> work) {
+        if (work.isDone()) {
+            return true;
+        }
+        Runnable queued = latencyTracking ? new TimedWork(work) : work;
+        if (!workQueue.offer(queued)) {
+            return false;
+        }
+        if (runState() != RUNNING && workQueue.remove(queued)) {
+            work.cancel(false);
+            return true;
+        }
+        afterEnqueue(1);
+        onSubmitted(work, SubmitStatus.ACCEPTED);
+        return true;
+    }
+
+    /**
+     * 周期任务执行完一次后放回时间轮
+     */
+    void reschedule(ScheduledWork<?> work) {
+        if (runState() != RUNNING) {
+            work.cancel(false);
+        } else {
+            scheduleWork(work);
+        }
+    }
+
+    void onScheduledCancelled(ScheduledWork<?> work) {
+        TimingWheel wheel = timingWheel;
+        if (wheel != null) {
+            wheel.cancel(work);
+        }
+    }
+
+    private void stopSizingController() {
+        SizingController controller;
+        stateLock.lock();
+        try {
+            controller = sizingController;
+            sizingController = null;
+            latencyTracking = latencyTrackingEnabled;
+        } finally {
+            stateLock.unlock();
+        }
+        if (controller != null) {
+            controller.stop();
+        }
+    }
+
+    /**
+     * 控制线程每个周期调用：与上一周期的统计快照相减得到本周期的采样数据，交给调节策略计算目标线程数
+     */
+    private void resize(SizingController controller, PoolStats previous, PoolStats current, long elapsedNanos) {
+        int threads = current.getCurrentThreadCount();
+        LatencyHistogram.Snapshot executionTime = current.getExecutionTime().minus(previous.getExecutionTime());
+        double utilization = threads == 0 || elapsedNanos <= 0 ? 1.0
+                : Math.min(1.0, (double) executionTime.getSumNanos() / ((double) elapsedNanos * threads));
+        long finished = current.getCompletedCount() + current.getFailedCount()
+                - previous.getCompletedCount() - previous.getFailedCount();
+        PoolSample sample = new PoolSample(elapsedNanos, threads, current.getQueueDepth(), Math.max(0, finished),
+                current.getQueueWaitTime().minus(previous.getQueueWaitTime()), executionTime, utilization);
+
+        int target = targetThreadCount;
+        int next = Math.max(coreThreadCount, Math.min(maxThreadCount,
+                controller.sizer.resize(sample, target, coreThreadCount, maxThreadCount)));
+        if (next == target) {
+            return;
+        }
+        // 采样期间策略可能已被替换或移除（目标线程数已重置），只有仍是当前控制线程时才写入新目标
+        stateLock.lock();
+        try {
+            if (sizingController != controller) {
+                return;
+            }
+            targetThreadCount = next;
+        } finally {
+            stateLock.unlock();
+        }
+        log.info("* pool sizer changed target threads {} -> {}, p99 queue wait {}us, utilization {}",
+                target, next, sample.getQueueWaitTime().getP99() / 1000, String.format("%.2f", utilization));
+        if (next > target) {
+            while (nowThreadCount() < next && tryAddThread()) {
+                // 创建线程直到达到目标
+            }
+        } else {
+            // 唤醒空闲线程让多出的线程退出，正在执行任务的线程执行完后自行检查
+            interruptIdleWorkers();
+        }
+    }
+
+    private void stopStallWatchdog() {
+        StallWatchdog watchdog;
+        stateLock.lock();
+        try {
+            watchdog = stallWatchdog;
+            stallWatchdog = null;
+        } finally {
+            stateLock.unlock();
+        }
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+        stalledWorkerCount = 0;
+    }
+
+    private static String formatStackTrace(StackTraceElement[] stackTrace) {
+        StringBuilder sb = new StringBuilder();
+        for (StackTraceElement element : stackTrace) {
+            sb.append(System.lineSeparator()).append("\tat ").append(element);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isWaiting(Thread.State state) {
+        return state == Thread.State.BLOCKED || state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING;
+    }
+
+    /**
+     * 一个 key 连续执行了一批任务后放到共享队列尾部，让其他任务先执行；不经过拒绝策略，放不进去时返回 false。
+     * 队列本身不计入提交数，其中的任务提交时已经统计过
+     */
+    private boolean requeue(KeyedQueue queue) {
+        if (runState() != RUNNING) {
+            return false;
+        }
+        if (!workQueue.offer(queue)) {
+            return false;
+        }
+        if (runState() != RUNNING && workQueue.remove(queue)) {
+            return false;
+        }
+        afterEnqueue(1);
+        return true;
+    }
+
+    /**
+     * discardOldest 丢弃队列中的任务：Future 被取消，按 key 串行执行的队列连同其中未执行的任务一起丢弃
+     */
+    static void onDiscarded(Runnable work) {
+        if (work instanceof TimedWork) {
+            work = ((TimedWork) work).work;
+        }
+        if (work instanceof Future) {
+            ((Future<?>) work).cancel(false);
+        } else if (work instanceof KeyedQueue) {
+            ((KeyedQueue) work).discard();
+        }
+    }
+
+    private void advanceRunState(int targetState) {
+        stateLock.lock();
+        try {
+            long c;
+            do {
+                c = ctl.get();
+                if (runStateOf(c) >= targetState) {
+                    return;
+                }
+            } while (!ctl.compareAndSet(c, ctlOf(targetState, threadCountOf(c))));
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * 中断正在等待任务的线程，让它们立即检查运行状态；正在执行任务的线程持有 runLock，不会被中断
+     */
+    private void interruptIdleWorkers() {
+        for (Worker worker : workers) {
+            Thread t = worker.thread;
+            if (!t.isInterrupted() && worker.runLock.tryLock()) {
+                try {
+                    t.interrupt();
+                } finally {
+                    worker.runLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 已关闭且所有线程都已退出（SHUTDOWN 状态下还要求队列为空）时进入 TERMINATED，唤醒 awaitTermination
+     */
+    private void tryTerminate() {
+        long c = ctl.get();
+        int state = runStateOf(c);
+        if (state == RUNNING || state == TERMINATED || threadCountOf(c) > 0
+                || state == SHUTDOWN && !workQueue.isEmpty()) {
+            return;
+        }
+        stateLock.lock();
+        try {
+            // 线程数为 0 时才能进入 TERMINATED，之后 tryAddThread 的 CAS 也不会再成功
+            c = ctl.get();
+            if (runStateOf(c) != TERMINATED && threadCountOf(c) == 0
+                    && ctl.compareAndSet(c, ctlOf(TERMINATED, 0))) {
+                termination.signalAll();
+                log.info("thread pool terminated");
+            }
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * 工作线程，工作窃取模式下持有自己的本地双端队列
+     */
+    private final class Worker {
+        /**
+         * 本地任务队列：自己从头部存取，其他线程从尾部窃取（共享队列模式下为 null）
+         */
+        final ConcurrentLinkedDeque<Runnable> localQueue;
+
+        /**
+         * 批量取出的任务，以及等待时同时取到两个任务时留到下一次执行的那个；本线程逐个取出执行，shutdownNow 取走剩下的
+         */
+        final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 本线程的耗时统计，只有本线程写入
+         */
+        final WorkStats stats = new WorkStats();
+
+        /**
+         * 执行任务期间持有，shutdown 只中断拿不到这把锁的（即空闲的）线程
+         */
+        final ReentrantLock runLock = new ReentrantLock();
+
+        Thread thread;
+
+        /**
+         * 空闲等待时为 WAITING，提交方替换为交接的任务或 null
+         */
+        volatile Object handoff;
+
+        /**
+         * 本次开始空闲等待的时间，回收线程据此判断是否超时
+         */
+        volatile long idleSince;
+
+        /**
+         * 空闲超时后已经释放了名额，执行完手上的任务就退出，只有本线程读写
+         */
+        boolean retired;
+
+        /**
+         * 是否正在 blocking 中，只有本线程写入，卡顿检测线程读取
+         */
+        volatile boolean blocking;
+
+        /**
+         * 本线程开始执行的任务数，只有本线程写入；卡顿检测线程两次检查之间没有变化说明还在执行同一个任务
+         */
+        volatile int taskSequence;
+
+        Worker(boolean workStealing) {
+            this.localQueue = workStealing ? new ConcurrentLinkedDeque<>() : null;
+        }
+
+        StretchableThreadPool pool() {
+            return StretchableThreadPool.this;
+        }
+    }
+
+    /**
+     * 一个 key 的待执行任务，作为一个任务放入共享队列，执行时依次执行其中的任务直到队列为空
+     * <p>
+     * 追加任务与判空移除都在 keyedQueues.compute 中进行，同一个 key 的这两个操作互斥，不会有任务被遗漏或并发执行
+     */
+    private final class KeyedQueue implements Runnable {
+        final Object key;
+        final ConcurrentLinkedDeque<Runnable> works = new ConcurrentLinkedDeque<>();
+
+        /**
+         * 是否已经放入共享队列或正在执行，只在 compute 中读写
+         */
+        boolean scheduled;
+
+        KeyedQueue(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            // 每个任务和普通任务一样统计排队时间、执行时间、完成与失败数并通知监听器；调用方执行（拒绝策略）时记入共享统计
+            Worker worker = CURRENT_WORKER.get();
+            if (worker != null && worker.pool() != StretchableThreadPool.this) {
+                worker = null;
+            }
+            WorkStats stats = worker != null ? worker.stats : sharedStats;
+            int count = 0;
+            while (true) {
+                Runnable work;
+                // shutdownNow 之后不再执行，剩下的任务由 shutdownNow 取走返回
+                while (runState() < STOP && (work = works.pollFirst()) != null) {
+                    // 卡顿检测按任务计数判断线程是否卡在同一个任务上，一批任务中的每一个都要单独计数
+                    if (worker != null) {
+                        worker.taskSequence++;
+                    }
+                    runWork(stats, work);
+                    if (++count % KEYED_BATCH_SIZE == 0 && !works.isEmpty() && requeue(this)) {
+                        return;
+                    }
+                }
+                if (runState() >= STOP) {
+                    return;
+                }
+                // 确认没有新追加的任务后才移除，之后同一个 key 的提交会创建新的队列
+                if (keyedQueues.compute(key, (k, q) -> q == this && works.isEmpty() ? null : q) != this) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * shutdownNow 取出还没有执行的任务（提交时的原始任务对象），正在执行的队列取空后自行结束
+         */
+        void drainTo(List<Runnable> pending) {
+            for (Runnable work; (work = works.pollFirst()) != null; ) {
+                pending.add(work);
+            }
+        }
+
+        /**
+         * 丢弃还没有执行的任务并移除队列，其中的 Future 被取消
+         *
+         * @return 被丢弃的任务（提交时的原始任务对象）
+         */
+        List<Runnable> discard() {
+            List<Runnable> dropped = new ArrayList<>();
+            keyedQueues.compute(key, (k, q) -> {
+                if (q != this) {
+                    return q;
+                }
+                drainTo(dropped);
+                return null;
+            });
+            dropped.replaceAll(work -> work instanceof TimedWork ? ((TimedWork) work).work : work);
+            for (Runnable work : dropped) {
+                onDiscarded(work);
+            }
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return "KeyedQueue(" + key + ")";
+        }
+    }
+
+    /**
+     * 线程数调节策略的控制线程：按固定周期采样并调整目标线程数，线程池关闭或替换策略后退出
+     */
+    private final class SizingController implements Runnable {
+        final PoolSizer sizer;
+        final long intervalNanos;
+        final Thread thread;
+        volatile boolean stopped;
+
+        SizingController(PoolSizer sizer, long intervalNanos) {
+            this.sizer = sizer;
+            this.intervalNanos = intervalNanos;
+            this.thread = new Thread(this, "sizer-" + threadIncrementThreadName.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            stopped = true;
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            PoolStats previous = getStats();
+            long previousNanos = System.nanoTime();
+            while (!stopped && runState() == RUNNING) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(intervalNanos);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                PoolStats current = getStats();
+                long now = System.nanoTime();
+                try {
+                    if (!stopped) {
+                        resize(this, previous, current, now - previousNanos);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("pool sizer failed", e);
+                }
+                previous = current;
+                previousNanos = now;
+            }
+        }
+    }
+
+    /**
+     * 卡顿检测线程：只读取各线程的任务计数、runLock 状态与线程状态，不参与任务执行
+     */
+    private final class StallWatchdog implements Runnable {
+        final long thresholdNanos;
+        final boolean compensate;
+        final Thread thread;
+        volatile boolean stopped;
+
+        /**
+         * 正在执行任务的线程上次检查时的任务计数及首次看到该计数的时间，只有检测线程访问
+         */
+        final Map<Worker, Observation> observations = new IdentityHashMap<>();
+        int lastQueueDepth;
+        boolean poolStallReported;
+
+        StallWatchdog(long thresholdNanos, boolean compensate) {
+            this.thresholdNanos = thresholdNanos;
+            this.compensate = compensate;
+            this.thread = new Thread(this, "watchdog-" + threadIncrementThreadName.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            stopped = true;
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            long interval = Math.max(TimeUnit.MILLISECONDS.toNanos(1), thresholdNanos / 4);
+            while (!stopped && runState() != TERMINATED) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(interval);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                try {
+                    check();
+                } catch (RuntimeException e) {
+                    log.warn("stall watchdog failed", e);
+                }
+            }
+        }
+
+        private void check() {
+            long now = System.nanoTime();
+            int alive = 0;
+            int running = 0;
+            int waiting = 0;
+            int stalled = 0;
+            List<Worker> waitingWorkers = new ArrayList<>();
+            Set<Worker> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Worker worker : workers) {
+                alive++;
+                seen.add(worker);
+                // runLock 只在执行任务期间持有
+                if (!worker.runLock.isLocked()) {
+                    observations.remove(worker);
+                    continue;
+                }
+                running++;
+                int sequence = worker.taskSequence;
+                Observation observation = observations.get(worker);
+                if (observation == null || observation.sequence != sequence) {
+                    observations.put(worker, new Observation(sequence, now));
+                    continue;
+                }
+                long runningNanos = now - observation.since;
+                if (runningNanos < thresholdNanos) {
+                    continue;
+                }
+                Thread.State state = worker.thread.getState();
+                if (!observation.reported) {
+                    observation.reported = true;
+                    reportWork(worker.thread, state, runningNanos);
+                }
+                if (isWaiting(state)) {
+                    waiting++;
+                    waitingWorkers.add(worker);
+                    // 已经在 blocking 中的线程补偿过了
+                    if (!worker.blocking) {
+                        stalled++;
+                    }
+                }
+            }
+            observations.keySet().retainAll(seen);
+
+            int queueDepth = workQueue.size();
+            // 所有线程都超时卡在阻塞状态且排队任务在增加时报告一次，直到有线程恢复
+            boolean allStuck = alive > 0 && running == alive && waiting == running;
+            if (!allStuck) {
+                poolStallReported = false;
+            } else if (queueDepth > lastQueueDepth && !poolStallReported) {
+                poolStallReported = true;
+                reportPool(waitingWorkers, queueDepth);
+            }
+            lastQueueDepth = queueDepth;
+
+            if (compensate && stalled != stalledWorkerCount) {
+                stalledWorkerCount = stalled;
+                if (stalled > 0) {
+                    expandIfNeeded(0);
+                }
+            }
+        }
+
+        private void reportWork(Thread t, Thread.State state, long runningNanos) {
+            StackTraceElement[] stackTrace = t.getStackTrace();
+            log.warn("thread {} has been running a work for {}ms, state {}{}", t.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(runningNanos), state, formatStackTrace(stackTrace));
+            EventSampling events = eventSampling;
+            if (events != null) {
+                events.fireWorkStalled(t, runningNanos, stackTrace);
+            }
+        }
+
+        private void reportPool(List<Worker> stuck, int queueDepth) {
+            StringBuilder sb = new StringBuilder();
+            for (Worker worker : stuck) {
+                sb.append(System.lineSeparator()).append("thread ").append(worker.thread.getName())
+                        .append(' ').append(worker.thread.getState())
+                        .append(formatStackTrace(worker.thread.getStackTrace()));
+            }
+            log.warn("thread pool stalled: all {} threads are blocked or waiting, {} works queued{}",
+                    stuck.size(), queueDepth, sb);
+            EventSampling events = eventSampling;
+            if (events != null) {
+                events.firePoolStalled(stuck.size(), queueDepth);
+            }
+        }
+    }
+
+    private static final class Observation {
+        final int sequence;
+        final long since;
+        boolean reported;
+
+        Observation(int sequence, long since) {
+            this.sequence = sequence;
+            this.since = since;
+        }
+    }
+
+    /**
+     * 一组耗时直方图：排队等待时间与执行耗时
+     */
+    private static final class WorkStats {
+        final LatencyHistogram queueWaitTime = new LatencyHistogram();
+        final LatencyHistogram executionTime = new LatencyHistogram();
+
+        void add(WorkStats other) {
+            queueWaitTime.add(other.queueWaitTime);
+            executionTime.add(other.executionTime);
+        }
+    }
+
+    /**
+     * 监听器与采样间隔，作为一个整体替换，读取时不会看到不一致的组合
+     */
+    private static final class EventSampling {
+        final PoolEventListener listener;
+        final int interval;
+
+        EventSampling(PoolEventListener listener, int interval) {
+            this.listener = listener;
+            this.interval = interval;
+        }
+
+        /**
+         * ThreadLocalRandom 没有线程间共享的状态，采样判断本身不产生竞争
+         */
+        boolean sample() {
+            return interval == 1 || ThreadLocalRandom.current().nextInt(interval) == 0;
+        }
+
+        void fireSubmitted(Runnable work) {
+            try {
+                listener.onWorkSubmitted(work);
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        void fireRejected(Runnable work, SubmitStatus status) {
+            try {
+                listener.onWorkRejected(work, status);
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        void fireBefore(Runnable work) {
+            try {
+                listener.beforeWork(Thread.currentThread(), unwrap(work));
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        void fireAfter(Runnable work, Throwable failure) {
+            try {
+                listener.afterWork(Thread.currentThread(), unwrap(work), failure);
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        void fireThreadCreated(Thread thread) {
+            try {
+                listener.onThreadCreated(thread);
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        void fireThreadTerminated(Thread thread) {
+            try {
+                listener.onThreadTerminated(thread);
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        void fireWorkStalled(Thread thread, long runningNanos, StackTraceElement[] stackTrace) {
+            try {
+                listener.onWorkStalled(thread, runningNanos, stackTrace);
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        void firePoolStalled(int stuckThreads, int queueDepth) {
+            try {
+                listener.onPoolStalled(stuckThreads, queueDepth);
+            } catch (RuntimeException e) {
+                log.warn("pool event listener failed", e);
+            }
+        }
+
+        private static Runnable unwrap(Runnable work) {
+            return work instanceof TimedWork ? ((TimedWork) work).work : work;
+        }
     }
 }
@@ -0,0 +1,38 @@
+package com.fyh.threadpool.main;
+
+/**
+ * tryCreateNewWork 的提交结果
+ */
+public enum SubmitStatus {
+    /**
+     * 任务已进入队列
+     */
+    ACCEPTED,
+
+    /**
+     * 队列已满，任务已由提交线程自己执行完毕
+     */
+    CALLER_RAN,
+
+    /**
+     * 队列已满，丢弃了队列中最早的一个任务后放入了本任务
+     */
+    DISCARDED_OLDEST,
+
+    /**
+     * 队列已满，本任务被丢弃
+     */
+    DISCARDED,
+
+    /**
+     * 队列已满（或等待超时），本任务被拒绝
+     */
+    REJECTED;
+
+    /**
+     * @return 本任务是否进入了队列
+     */
+    public boolean isQueued() {
+        return this == ACCEPTED || this == DISCARDED_OLDEST;
+    }
+}
@@ -0,0 +1,230 @@
+package com.fyh.threadpool.main;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 带依赖关系的任务图：先用 add 声明任务及其依赖的任务，再交给线程池执行，每个任务在依赖的任务全部完成后立即提交，
+ * 不按层等待，例如：
+ * <pre>
+ * TaskGraph graph = new TaskGraph();
+ * TaskGraph.Node&lt;Data&gt; load = graph.add(() -&gt; load());
+ * TaskGraph.Node&lt;Void&gt; check = graph.add(() -&gt; check(load.get()), load);
+ * graph.execute(pool).get();
+ * </pre>
+ * 每个任务持有一个剩余依赖计数，依赖的任务完成时原子递减，减到 0 的那个线程负责提交，任务之间不加锁。
+ * 任务失败或被取消时，所有直接或间接依赖它的任务都被取消，与之无关的分支继续执行；
+ * 全部任务结束后 execute 返回的 Future 完成，有任务失败时以第一个失败的异常结束。
+ * <p>
+ * 依赖只能是之前添加的任务，因此一定不会有环。构建阶段不是线程安全的，每个图只能执行一次
+ */
+public class TaskGraph {
+    /**
+     * 当前线程正在进行的级联取消
+     */
+    private static final ThreadLocal<Deque<Node<?>>> CASCADE = new ThreadLocal<>();
+
+    private final List<Node<?>> nodes = new ArrayList<>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private StretchableThreadPool pool;
+    private Completion completion;
+
+    /**
+     * @param work         任务
+     * @param dependencies 依赖的任务，全部正常完成后才执行本任务
+     * @return 本任务的节点，任务完成后可以通过 get 获取结果
+     */
+    public <T> Node<T> add(Callable<T> work, Node<?>... dependencies) {
+        return register(new Node<>(this, work, dependencies));
+    }
+
+    /**
+     * @param work         任务
+     * @param dependencies 依赖的任务，全部正常完成后才执行本任务
+     * @return 本任务的节点
+     */
+    public Node<Void> add(Runnable work, Node<?>... dependencies) {
+        return register(new Node<Void>(this, work, dependencies));
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    private <T> Node<T> register(Node<T> node) {
+        if (completion != null) {
+            throw new IllegalStateException("task graph is already executing");
+        }
+        for (Node<?> dependency : node.dependencies) {
+            if (dependency.graph != this) {
+                throw new IllegalArgumentException("dependency belongs to another task graph");
+            }
+            dependency.dependents.add(node);
+        }
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * 提交所有没有依赖的任务，之后的任务由完成的依赖任务提交
+     *
+     * @return 全部任务结束后完成的 Future；取消它会取消所有还没有完成的任务
+     */
+    public WorkFuture<Void> execute(StretchableThreadPool pool) {
+        if (completion != null) {
+            throw new IllegalStateException("task graph is already executing");
+        }
+        this.pool = pool;
+        this.completion = new Completion(this);
+        remaining.set(nodes.size());
+        if (nodes.isEmpty()) {
+            completion.set(null);
+            return completion;
+        }
+        // 先设置好所有计数再提交，提交出去的任务完成时可能立即递减其他节点的计数
+        List<Node<?>> roots = new ArrayList<>();
+        List<Node<?>> cancelled = new ArrayList<>();
+        for (Node<?> node : nodes) {
+            node.pending = node.dependencies.length;
+            if (node.isDone()) {
+                cancelled.add(node);
+            } else if (node.pending == 0) {
+                roots.add(node);
+            }
+        }
+        for (Node<?> root : roots) {
+            submit(root);
+        }
+        // 执行之前就被取消的任务，此时再级联取消依赖它的任务
+        for (Node<?> node : cancelled) {
+            onNodeDone(node);
+        }
+        return completion;
+    }
+
+    private void submit(Node<?> node) {
+        if (node.isDone()) {
+            return;
+        }
+        // 被拒绝按任务失败处理；被丢弃时线程池已经取消了它，两种情况都会级联到依赖它的任务
+        if (pool.tryCreateNewWork(node) == SubmitStatus.REJECTED) {
+            node.setException(pool.rejection());
+        }
+    }
+
+    /**
+     * 节点完成时调用：正常完成则递减依赖它的节点的计数，失败或取消则取消所有直接或间接依赖它的节点
+     */
+    private void onNodeDone(Node<?> node) {
+        if (completion == null) {
+            return;
+        }
+        if (!node.isCancelled() && !node.isCompletedExceptionally()) {
+            for (Node<?> dependent : node.dependents) {
+                if (Node.PENDING.decrementAndGet(dependent) == 0) {
+                    submit(dependent);
+                }
+            }
+        } else {
+            Throwable failure = node.exception();
+            firstFailure.compareAndSet(null, failure != null ? failure : new CancellationException());
+            cancelDependents(node);
+        }
+        if (remaining.decrementAndGet() == 0) {
+            Throwable failure = firstFailure.get();
+            if (failure == null) {
+                completion.set(null);
+            } else {
+                completion.setException(failure);
+            }
+        }
+    }
+
+    /**
+     * 取消一个节点会在同一线程上再次进入这里，此时只把它的依赖方压入外层的栈，依赖链很长时也不会递归过深
+     */
+    private static void cancelDependents(Node<?> failed) {
+        Deque<Node<?>> stack = CASCADE.get();
+        if (stack != null) {
+            stack.addAll(failed.dependents);
+            return;
+        }
+        stack = new ArrayDeque<>(failed.dependents);
+        CASCADE.set(stack);
+        try {
+            while (!stack.isEmpty()) {
+                stack.pop().cancel(false);
+            }
+        } finally {
+            CASCADE.remove();
+        }
+    }
+
+    /**
+     * 任务图中的一个任务，本身就是放入线程池队列的对象，同时是该任务的 Future
+     *
+     * @param <T> 结果类型
+     */
+    public static final class Node<T> extends WorkFuture<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Node> PENDING =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "pending");
+
+        private final TaskGraph graph;
+        private final Node<?>[] dependencies;
+        private final List<Node<?>> dependents = new ArrayList<>();
+
+        /**
+         * 还没有完成的依赖数
+         */
+        private volatile int pending;
+
+        private Node(TaskGraph graph, Callable<T> callable, Node<?>[] dependencies) {
+            super(callable);
+            this.graph = graph;
+            this.dependencies = dependencies.clone();
+        }
+
+        private Node(TaskGraph graph, Runnable runnable, Node<?>[] dependencies) {
+            super(runnable, null);
+            this.graph = graph;
+            this.dependencies = dependencies.clone();
+        }
+
+        @Override
+        protected void done() {
+            graph.onNodeDone(this);
+        }
+    }
+
+    /**
+     * execute 返回的 Future，本身不会被执行，由最后一个结束的任务设置结果
+     */
+    private static final class Completion extends WorkFuture<Void> {
+        private final TaskGraph graph;
+
+        Completion(TaskGraph graph) {
+            super(() -> null);
+            this.graph = graph;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                for (Node<?> node : graph.nodes) {
+                    node.cancel(mayInterruptIfRunning);
+                }
+            }
+            return cancelled;
+        }
+    }
+}
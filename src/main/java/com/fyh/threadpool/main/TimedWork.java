@@ -0,0 +1,24 @@
+package com.fyh.threadpool.main;
+
+/**
+ * 开启耗时统计时包装提交的任务，记录入队时间用于计算排队等待时间
+ */
+final class TimedWork implements Runnable {
+    final Runnable work;
+    final long enqueueNanos;
+
+    TimedWork(Runnable work) {
+        this.work = work;
+        this.enqueueNanos = System.nanoTime();
+    }
+
+    @Override
+    public void run() {
+        work.run();
+    }
+
+    @Override
+    public String toString() {
+        return work.toString();
+    }
+}
@@ -0,0 +1,310 @@
+package com.fyh.threadpool.main;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * 分层时间轮，由一个驱动线程推进，到期的定时任务交给线程池的任务队列执行
+ * <p>
+ * 共 LEVELS 层，每层 512 个槽，第 0 层每槽 1 个 tick，上一层每槽是下一层一整圈。任务按到期 tick 与当前 tick 的差值放入对应层，
+ * 上层的槽到点时把其中的任务重新分配到下层（cascade）。每个槽是双向链表，插入、取消都是 O(1)。
+ * <p>
+ * 时间轮本身只由驱动线程访问：其他线程的新增与取消先放入无锁队列，驱动线程每次醒来时批量处理，不需要加锁。
+ * 驱动线程在没有到期事件时按下一个需要处理的 tick 睡眠，时间轮为空时一直挂起
+ */
+@Slf4j
+final class TimingWheel {
+    private static final int WHEEL_BITS = 9;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 6;
+
+    /**
+     * 驱动线程没有到期时间、一直挂起时 wakeNanos 的取值
+     */
+    private static final long PARKED = Long.MIN_VALUE;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Bucket[][] buckets = new Bucket[LEVELS][WHEEL_SIZE];
+    private final long[] levelCounts = new long[LEVELS];
+
+    /**
+     * 已经处理过的 tick 数（相对 startNanos）
+     */
+    private long currentTick;
+
+    /**
+     * 到期时调用，返回 false 表示任务队列已满，下个 tick 再试
+     */
+    private final Predicate<ScheduledWork<?>> dispatcher;
+
+    private final Queue<ScheduledWork<?>> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<ScheduledWork<?>> pendingCancels = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 到期但暂时放不进任务队列的任务，只由驱动线程访问
+     */
+    private final Queue<ScheduledWork<?>> overflow = new ArrayDeque<>();
+
+    private final Thread ticker;
+
+    /**
+     * 驱动线程计划醒来的时间，新任务更早到期时才需要唤醒它
+     */
+    private volatile long wakeNanos = PARKED;
+    private volatile boolean stopped;
+
+    /**
+     * @param tickNanos  每个 tick 的纳秒数，即定时精度
+     * @param dispatcher 任务到期时的处理方法
+     * @param threadName 驱动线程名称
+     */
+    TimingWheel(long tickNanos, Predicate<ScheduledWork<?>> dispatcher, String threadName) {
+        this.tickNanos = tickNanos;
+        this.dispatcher = dispatcher;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                buckets[level][i] = new Bucket(level);
+            }
+        }
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(this::runTicker, threadName);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * 可以在任意线程调用
+     */
+    void schedule(ScheduledWork<?> work) {
+        pendingAdds.add(work);
+        long wake = wakeNanos;
+        if (wake == PARKED || work.deadline() - wake < 0) {
+            LockSupport.unpark(ticker);
+        }
+    }
+
+    /**
+     * 可以在任意线程调用，任务已经被取消，这里只是把它从时间轮中摘掉释放内存
+     */
+    void cancel(ScheduledWork<?> work) {
+        if (!stopped) {
+            pendingCancels.add(work);
+        }
+    }
+
+    /**
+     * 停止驱动线程，尚未到期的任务全部取消
+     */
+    void stop() {
+        stopped = true;
+        LockSupport.unpark(ticker);
+    }
+
+    /**
+     * 等待驱动线程取消完所有任务后退出（在驱动线程自己上调用时直接返回）
+     */
+    void awaitStopped() throws InterruptedException {
+        if (Thread.currentThread() != ticker) {
+            ticker.join();
+        }
+    }
+
+    private void runTicker() {
+        while (!stopped) {
+            try {
+                for (ScheduledWork<?> work; (work = pendingCancels.poll()) != null; ) {
+                    remove(work);
+                }
+                while (!overflow.isEmpty() && dispatcher.test(overflow.peek())) {
+                    overflow.poll();
+                }
+                // 先推进到当前时间再放入新任务，新任务按最新的 tick 计算所在层
+                advance(System.nanoTime());
+                for (ScheduledWork<?> work; (work = pendingAdds.poll()) != null; ) {
+                    if (!work.isDone()) {
+                        add(work);
+                    }
+                }
+                park();
+            } catch (RuntimeException e) {
+                log.error("timing wheel ticker failed", e);
+            }
+        }
+        cancelAll();
+    }
+
+    private void park() {
+        long next = overflow.isEmpty() ? nextEventTick() : currentTick + 1;
+        if (next == Long.MAX_VALUE) {
+            wakeNanos = PARKED;
+            // 发布 wakeNanos 之后再检查一次，与 schedule 中先入队再读 wakeNanos 配合，不会漏掉唤醒
+            if (pendingAdds.isEmpty() && !stopped) {
+                LockSupport.park(this);
+            }
+        } else {
+            long wake = startNanos + next * tickNanos;
+            wakeNanos = wake;
+            long nanos = wake - System.nanoTime();
+            if (nanos > 0 && pendingAdds.isEmpty() && !stopped) {
+                LockSupport.parkNanos(this, nanos);
+            }
+        }
+    }
+
+    /**
+     * 处理到 now 为止所有到期的 tick，跳过没有任何事件的 tick
+     */
+    private void advance(long now) {
+        long target = (now - startNanos) / tickNanos;
+        while (currentTick < target) {
+            long next = nextEventTick();
+            if (next > target) {
+                currentTick = target;
+                return;
+            }
+            currentTick = next;
+            // 从高层往低层依次降级，高层降下来的任务可能还要继续降到更低层
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                int shift = WHEEL_BITS * level;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    cascade(buckets[level][(int) (currentTick >>> shift) & MASK]);
+                }
+            }
+            expire(buckets[0][(int) currentTick & MASK]);
+        }
+    }
+
+    /**
+     * @return 下一个需要处理的 tick：第 0 层不为空时是下一个 tick，否则是最低的非空层下一次降级的时刻
+     */
+    private long nextEventTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            if (levelCounts[level] > 0) {
+                int shift = WHEEL_BITS * level;
+                return ((currentTick >>> shift) + 1) << shift;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void add(ScheduledWork<?> work) {
+        // 向上取整，保证任务不会提前执行
+        long tick = Math.floorDiv(work.deadline() - startNanos + tickNanos - 1, tickNanos);
+        if (tick <= currentTick) {
+            dispatch(work);
+            return;
+        }
+        long ticks = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && ticks >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        buckets[level][(int) (tick >>> (WHEEL_BITS * level)) & MASK].add(work);
+        levelCounts[level]++;
+    }
+
+    private void remove(ScheduledWork<?> work) {
+        Bucket bucket = work.bucket;
+        if (bucket != null) {
+            bucket.remove(work);
+            levelCounts[bucket.level]--;
+        }
+    }
+
+    private void cascade(Bucket bucket) {
+        for (ScheduledWork<?> work; (work = bucket.poll()) != null; ) {
+            levelCounts[bucket.level]--;
+            add(work);
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        for (ScheduledWork<?> work; (work = bucket.poll()) != null; ) {
+            levelCounts[0]--;
+            dispatch(work);
+        }
+    }
+
+    private void dispatch(ScheduledWork<?> work) {
+        if (!overflow.isEmpty() || !dispatcher.test(work)) {
+            overflow.add(work);
+        }
+    }
+
+    private void cancelAll() {
+        List<ScheduledWork<?>> pending = new ArrayList<>(overflow);
+        overflow.clear();
+        for (Bucket[] level : buckets) {
+            for (Bucket bucket : level) {
+                for (ScheduledWork<?> work; (work = bucket.poll()) != null; ) {
+                    pending.add(work);
+                }
+            }
+        }
+        for (ScheduledWork<?> work; (work = pendingAdds.poll()) != null; ) {
+            pending.add(work);
+        }
+        pendingCancels.clear();
+        for (ScheduledWork<?> work : pending) {
+            work.cancel(false);
+        }
+    }
+
+    /**
+     * 时间轮的一个槽：定时任务组成的双向链表
+     */
+    static final class Bucket {
+        final int level;
+        private ScheduledWork<?> head;
+        private ScheduledWork<?> tail;
+
+        Bucket(int level) {
+            this.level = level;
+        }
+
+        void add(ScheduledWork<?> work) {
+            work.bucket = this;
+            work.prev = tail;
+            work.next = null;
+            if (tail == null) {
+                head = work;
+            } else {
+                tail.next = work;
+            }
+            tail = work;
+        }
+
+        void remove(ScheduledWork<?> work) {
+            if (work.prev == null) {
+                head = work.next;
+            } else {
+                work.prev.next = work.next;
+            }
+            if (work.next == null) {
+                tail = work.prev;
+            } else {
+                work.next.prev = work.prev;
+            }
+            work.bucket = null;
+            work.prev = null;
+            work.next = null;
+        }
+
+        ScheduledWork<?> poll() {
+            ScheduledWork<?> work = head;
+            if (work != null) {
+                remove(work);
+            }
+            return work;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.fyh.threadpool.main;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程工厂（JDK 21+）
+ * <p>
+ * 项目按 Java 11 编译，这里通过反射调用 Thread.ofVirtual()，在更早的 JDK 上运行时不可用
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 当前运行的 JDK 是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建虚拟线程工厂，线程名为 namePrefix 加递增序号
+     *
+     * @param namePrefix 线程名前缀
+     * @throws UnsupportedOperationException 当前 JDK 不支持虚拟线程
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads require JDK 21 or later", e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.fyh.threadpool.main;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 环形队列在满/空时的等待策略，每个等待方向（等待可取、等待可放）各持有一个实例
+ */
+public interface WaitStrategy {
+
+    /**
+     * 等待直到 ready 返回 true 或者到达截止时间
+     *
+     * @param ready    等待的条件
+     * @param timed    是否有截止时间
+     * @param deadline 截止时间（System.nanoTime），timed 为 false 时忽略
+     */
+    void await(BooleanSupplier ready, boolean timed, long deadline) throws InterruptedException;
+
+    /**
+     * 另一端取走或放入元素后调用，通知可能正在等待的线程
+     */
+    void signal();
+
+    /**
+     * 另一端一次取走或放入了 count 个元素，最多唤醒 count 个等待的线程
+     */
+    default void signal(int count) {
+        for (int i = 0; i < count; i++) {
+            signal();
+        }
+    }
+
+    /**
+     * 一直自旋，延迟最低，但等待期间占满一个 CPU
+     */
+    static WaitStrategy busySpin() {
+        return new SpinningWait(Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * 先自旋一小段时间，然后不断 Thread.yield 让出 CPU
+     */
+    static WaitStrategy yielding() {
+        return new SpinningWait(100, false);
+    }
+
+    /**
+     * 自旋、让出之后以 parkNanos 小睡的方式轮询，CPU 占用低但唤醒有延迟
+     */
+    static WaitStrategy sleeping() {
+        return new SpinningWait(100, true);
+    }
+
+    /**
+     * 锁 + 条件变量，等待的线程完全挂起，只有存在等待者时另一端才会去加锁唤醒
+     */
+    static WaitStrategy blocking() {
+        return new BlockingWait();
+    }
+
+    final class SpinningWait implements WaitStrategy {
+        private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+        private final int spinTries;
+        private final boolean sleep;
+
+        private SpinningWait(int spinTries, boolean sleep) {
+            this.spinTries = spinTries;
+            this.sleep = sleep;
+        }
+
+        @Override
+        public void await(BooleanSupplier ready, boolean timed, long deadline) throws InterruptedException {
+            for (int attempt = 0; !ready.getAsBoolean(); attempt++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (timed && System.nanoTime() - deadline >= 0) {
+                    return;
+                }
+                if (attempt < spinTries) {
+                    Thread.onSpinWait();
+                } else if (!sleep || attempt < spinTries * 2) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, SLEEP_NANOS);
+                }
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+
+        @Override
+        public void signal(int count) {
+        }
+    }
+
+    final class BlockingWait implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition condition = lock.newCondition();
+        private volatile int waiters;
+
+        private BlockingWait() {
+        }
+
+        @Override
+        public void await(BooleanSupplier ready, boolean timed, long deadline) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                // 先登记等待者再检查条件，和 signal 中先发布元素再读 waiters 配合，保证不会丢失唤醒
+                waiters++;
+                while (!ready.getAsBoolean()) {
+                    if (!timed) {
+                        condition.await();
+                    } else {
+                        long nanos = deadline - System.nanoTime();
+                        if (nanos <= 0) {
+                            return;
+                        }
+                        condition.awaitNanos(nanos);
+                    }
+                }
+            } finally {
+                waiters--;
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signal() {
+            VarHandle.fullFence();
+            if (waiters > 0) {
+                lock.lock();
+                try {
+                    condition.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        @Override
+        public void signal(int count) {
+            VarHandle.fullFence();
+            if (waiters > 0) {
+                lock.lock();
+                try {
+                    for (int i = Math.min(count, waiters); i > 0; i--) {
+                        condition.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.fyh.threadpool.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * submit 返回的轻量 Future：任务本身与完成状态放在同一个对象里，直接作为 Runnable 放入任务队列，每个任务只分配一次
+ * <p>
+ * 只有调用方真的阻塞等待或注册回调时才会额外分配等待节点。回调在完成任务的线程上直接执行，
+ * 注册时任务已经完成则在注册线程上立即执行
+ *
+ * @param <T> 结果类型
+ */
+public class WorkFuture<T> implements RunnableFuture<T> {
+    private static final int NEW = 0;
+    private static final int COMPLETING = 1;
+    private static final int NORMAL = 2;
+    private static final int EXCEPTIONAL = 3;
+    private static final int CANCELLED = 4;
+    private static final int INTERRUPTED = 5;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<WorkFuture> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(WorkFuture.class, "state");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WorkFuture, Thread> RUNNER =
+            AtomicReferenceFieldUpdater.newUpdater(WorkFuture.class, Thread.class, "runner");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WorkFuture, Node> WAITERS =
+            AtomicReferenceFieldUpdater.newUpdater(WorkFuture.class, Node.class, "waiters");
+
+    /**
+     * 完成后 waiters 被替换为该节点，之后注册的回调直接执行
+     */
+    private static final Node DONE = new Node(null, null);
+
+    private volatile int state;
+    private Callable<T> callable;
+
+    /**
+     * 由 Runnable 创建时直接保存任务与结果，不再包装成 Callable
+     */
+    private Runnable runnable;
+    private T result;
+
+    /**
+     * 正常结果或异常，由 state 的 volatile 写发布
+     */
+    private Object outcome;
+    private volatile Thread runner;
+
+    /**
+     * 等待线程与回调组成的栈
+     */
+    private volatile Node waiters;
+
+    public WorkFuture(Callable<T> callable) {
+        if (callable == null) {
+            throw new NullPointerException();
+        }
+        this.callable = callable;
+    }
+
+    /**
+     * @param runnable 任务
+     * @param result   任务完成后 get 返回的结果
+     */
+    public WorkFuture(Runnable runnable, T result) {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        this.runnable = runnable;
+        this.result = result;
+    }
+
+    @Override
+    public void run() {
+        if (state != NEW || !RUNNER.compareAndSet(this, null, Thread.currentThread())) {
+            return;
+        }
+        try {
+            Callable<T> c = callable;
+            Runnable r = runnable;
+            if ((c != null || r != null) && state == NEW) {
+                T value;
+                try {
+                    if (c != null) {
+                        value = c.call();
+                    } else {
+                        r.run();
+                        value = result;
+                    }
+                } catch (Throwable e) {
+                    complete(e, EXCEPTIONAL);
+                    return;
+                }
+                complete(value, NORMAL);
+            }
+        } finally {
+            runner = null;
+            awaitCancellationInterrupt();
+        }
+    }
+
+    /**
+     * 周期任务使用：执行一次任务但不设置结果，任务可以再次执行
+     *
+     * @return 任务正常执行完且没有被取消
+     */
+    protected boolean runAndReset() {
+        if (state != NEW || !RUNNER.compareAndSet(this, null, Thread.currentThread())) {
+            return false;
+        }
+        boolean ran = false;
+        try {
+            Callable<T> c = callable;
+            Runnable r = runnable;
+            if ((c != null || r != null) && state == NEW) {
+                try {
+                    if (c != null) {
+                        c.call();
+                    } else {
+                        r.run();
+                    }
+                    ran = true;
+                } catch (Throwable e) {
+                    complete(e, EXCEPTIONAL);
+                }
+            }
+        } finally {
+            runner = null;
+            awaitCancellationInterrupt();
+        }
+        return ran && state == NEW;
+    }
+
+    /**
+     * 等待可能正在进行的 cancel(true) 中断完成，避免中断泄漏到后续任务
+     */
+    private void awaitCancellationInterrupt() {
+        if (state == INTERRUPTED) {
+            while (state == INTERRUPTED) {
+                Thread.yield();
+            }
+            Thread.interrupted();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!STATE.compareAndSet(this, NEW, mayInterruptIfRunning ? INTERRUPTED : CANCELLED)) {
+            return false;
+        }
+        if (mayInterruptIfRunning) {
+            try {
+                Thread t = runner;
+                if (t != null) {
+                    t.interrupt();
+                }
+            } finally {
+                state = CANCELLED;
+            }
+        }
+        finish();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state >= CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state != NEW;
+    }
+
+    /**
+     * @return 任务是否已经完成且抛出了异常
+     */
+    public boolean isCompletedExceptionally() {
+        return state == EXCEPTIONAL;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        int s = state;
+        if (s <= COMPLETING) {
+            s = awaitDone(false, 0L);
+        }
+        return report(s);
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        int s = state;
+        if (s <= COMPLETING && (s = awaitDone(true, unit.toNanos(timeout))) <= COMPLETING) {
+            throw new TimeoutException();
+        }
+        return report(s);
+    }
+
+    /**
+     * 注册完成回调，任务完成（包括取消）后在完成它的线程上执行
+     *
+     * @param action 参数为结果与异常，取消时异常为 CancellationException
+     * @return 本对象
+     */
+    public WorkFuture<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        Node node = null;
+        while (true) {
+            Node head = waiters;
+            if (head == DONE) {
+                runCallback(action);
+                return this;
+            }
+            if (node == null) {
+                node = new Node(null, action);
+            }
+            node.next = head;
+            if (WAITERS.compareAndSet(this, head, node)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 不执行任务，直接以 value 正常完成，已经完成时忽略
+     */
+    protected void set(T value) {
+        complete(value, NORMAL);
+    }
+
+    /**
+     * 不执行任务，直接以异常完成，已经完成时忽略
+     */
+    protected void setException(Throwable failure) {
+        complete(failure, EXCEPTIONAL);
+    }
+
+    /**
+     * 完成（包括取消）时在完成它的线程上调用，此时等待线程已被唤醒、回调还没有执行，默认什么也不做
+     */
+    protected void done() {
+    }
+
+    /**
+     * @return 以异常完成时的异常，否则为 null
+     */
+    Throwable exception() {
+        return state == EXCEPTIONAL ? (Throwable) outcome : null;
+    }
+
+    private void complete(Object value, int finalState) {
+        if (STATE.compareAndSet(this, NEW, COMPLETING)) {
+            outcome = value;
+            state = finalState;
+            finish();
+        }
+    }
+
+    /**
+     * 唤醒所有等待线程，按注册顺序执行回调
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void finish() {
+        Node head = WAITERS.getAndSet(this, DONE);
+        callable = null;
+        runnable = null;
+        result = null;
+        // 栈是后进先出的，回调收集后倒序执行，保证按注册顺序执行；不改动节点的 next，同时进行的 removeWaiter 仍然可以安全遍历
+        List<BiConsumer> callbacks = null;
+        for (Node n = head; n != null; n = n.next) {
+            if (n.action != null) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>();
+                }
+                callbacks.add(n.action);
+            } else {
+                Thread t = n.thread;
+                if (t != null) {
+                    LockSupport.unpark(t);
+                }
+            }
+        }
+        try {
+            done();
+        } catch (RuntimeException ignored) {
+            // 与回调一样不能影响执行任务的线程
+        }
+        if (callbacks != null) {
+            for (int i = callbacks.size() - 1; i >= 0; i--) {
+                runCallback(callbacks.get(i));
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void runCallback(BiConsumer<? super T, ? super Throwable> action) {
+        int s = state;
+        T result = s == NORMAL ? (T) outcome : null;
+        Throwable failure = s == EXCEPTIONAL ? (Throwable) outcome
+                : s >= CANCELLED ? new CancellationException() : null;
+        try {
+            action.accept(result, failure);
+        } catch (RuntimeException ignored) {
+            // 回调的异常不能影响执行任务的线程和其他回调
+        }
+    }
+
+    private int awaitDone(boolean timed, long nanos) throws InterruptedException {
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Node node = null;
+        boolean queued = false;
+        while (true) {
+            int s = state;
+            if (s > COMPLETING) {
+                if (node != null) {
+                    node.thread = null;
+                }
+                return s;
+            } else if (s == COMPLETING) {
+                // 马上就会写入结果，不必挂起
+                Thread.yield();
+            } else if (Thread.interrupted()) {
+                removeWaiter(node);
+                throw new InterruptedException();
+            } else if (node == null) {
+                if (timed && nanos <= 0L) {
+                    return s;
+                }
+                node = new Node(Thread.currentThread(), null);
+            } else if (!queued) {
+                Node head = waiters;
+                if (head == DONE) {
+                    continue;
+                }
+                node.next = head;
+                queued = WAITERS.compareAndSet(this, head, node);
+            } else if (timed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    removeWaiter(node);
+                    return state;
+                }
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * 等待超时或被中断的线程把自己的节点从栈中摘除，循环 get(timeout) 时栈不会无限增长
+     * <p>
+     * 与 FutureTask.removeWaiter 相同：先清空线程引用，再遍历整个栈摘除所有线程引用为空的等待节点（回调节点保留），
+     * 与其他线程同时摘除发生冲突时从头重新遍历
+     */
+    private void removeWaiter(Node node) {
+        if (node == null) {
+            return;
+        }
+        node.thread = null;
+        retry:
+        while (true) {
+            for (Node pred = null, q = waiters, next; q != null && q != DONE; q = next) {
+                next = q.next;
+                if (q.thread != null || q.action != null) {
+                    pred = q;
+                } else if (pred != null) {
+                    pred.next = next;
+                    // 前驱也刚好被摘除了，重新遍历
+                    if (pred.thread == null && pred.action == null) {
+                        continue retry;
+                    }
+                } else if (!WAITERS.compareAndSet(this, q, next)) {
+                    continue retry;
+                }
+            }
+            return;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T report(int s) throws ExecutionException {
+        Object x = outcome;
+        if (s == NORMAL) {
+            return (T) x;
+        }
+        if (s >= CANCELLED) {
+            throw new CancellationException();
+        }
+        throw new ExecutionException((Throwable) x);
+    }
+
+    @Override
+    public String toString() {
+        Object task = callable != null ? callable : runnable;
+        return task != null ? task.toString() : super.toString();
+    }
+
+    /**
+     * 等待节点：action 不为空时是回调，否则是等待线程（等待超时或被中断后 thread 置空）
+     */
+    @SuppressWarnings("rawtypes")
+    private static final class Node {
+        volatile Thread thread;
+        final BiConsumer action;
+        volatile Node next;
+
+        Node(Thread thread, BiConsumer action) {
+            this.thread = thread;
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.HillClimbingSizer;
+import com.fyh.threadpool.main.LatencyHistogram;
+import com.fyh.threadpool.main.PoolSample;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HillClimbingSizerTest {
+
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static PoolSample sample(int threads, int queueDepth, double throughput) {
+        LatencyHistogram.Snapshot empty = new LatencyHistogram().snapshot();
+        long completed = Math.round(throughput * INTERVAL_NANOS / 1e9);
+        return new PoolSample(INTERVAL_NANOS, threads, queueDepth, completed, empty, empty, 1.0);
+    }
+
+    /**
+     * 按给定的吞吐量曲线反复调用 resize，返回最后 20 次调整中目标线程数的最小值与最大值
+     */
+    private static int[] climb(HillClimbingSizer sizer, IntToDoubleFunction throughput, int start) {
+        int target = start;
+        int low = Integer.MAX_VALUE;
+        int high = 0;
+        for (int i = 0; i < 300; i++) {
+            target = sizer.resize(sample(target, 1000, throughput.applyAsDouble(target)), target, 1, 64);
+            if (i >= 280) {
+                low = Math.min(low, target);
+                high = Math.max(high, target);
+            }
+        }
+        return new int[]{low, high};
+    }
+
+    @Test
+    public void testConvergesToThroughputPeak() {
+        // 线程数到 12 之前吞吐量线性增长，之后因为竞争反而下降
+        IntToDoubleFunction curve = n -> n <= 12 ? 1000.0 * n : 12000.0 - 500.0 * (n - 12);
+
+        int[] fromBelow = climb(new HillClimbingSizer(), curve, 2);
+        assertTrue(fromBelow[0] >= 10 && fromBelow[1] <= 14, fromBelow[0] + ".." + fromBelow[1]);
+
+        int[] fromAbove = climb(new HillClimbingSizer(), curve, 48);
+        assertTrue(fromAbove[0] >= 10 && fromAbove[1] <= 14, fromAbove[0] + ".." + fromAbove[1]);
+    }
+
+    @Test
+    public void testDoesNotGrowWithoutBacklog() {
+        HillClimbingSizer sizer = new HillClimbingSizer(1, 0.05, 4);
+        int target = 8;
+        for (int i = 0; i < 20; i++) {
+            int next = sizer.resize(sample(target, 0, 500), target, 2, 64);
+            assertTrue(next <= target);
+            target = next;
+        }
+        // 吞吐量不随线程数变化（受限于任务到达速度），逐步减少到核心线程数
+        assertEquals(2, target);
+    }
+
+    @Test
+    public void testPoolAddsThreadsForBlockingWork() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 16,
+                3000, new LinkedBlockingDeque<>());
+        pool.setPoolSizer(new HillClimbingSizer(2, 0.05, 4), 20, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 20000; i++) {
+            pool.createNewWork(() -> {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // 阻塞型任务线程越多吞吐量越高，线程数应持续增加
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getCurrentThreadCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(pool.getStats().getCurrentThreadCount() >= 8, pool.getStats().toString());
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
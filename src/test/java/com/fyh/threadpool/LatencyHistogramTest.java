@@ -0,0 +1,58 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.LatencyHistogram;
+import com.fyh.threadpool.main.PoolStats;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void testPercentilesWithinBucketError() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        pool.setLatencyTrackingEnabled(true);
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            pool.createNewWork(done::countDown);
+        }
+        pool.createNewWork(() -> {
+            throw new IllegalStateException("expected failure");
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // 计数在任务 run 返回之后才更新，稍等统计追上
+        PoolStats stats = pool.getStats();
+        for (int i = 0; i < 100 && stats.getExecutionTime().getCount() < 101; i++) {
+            Thread.sleep(10);
+            stats = pool.getStats();
+        }
+        assertEquals(101, stats.getSubmittedCount());
+        assertEquals(100, stats.getCompletedCount());
+        assertEquals(1, stats.getFailedCount());
+        assertEquals(1, stats.getCurrentThreadCount());
+        assertEquals(101, stats.getQueueWaitTime().getCount());
+        assertEquals(101, stats.getExecutionTime().getCount());
+    }
+
+    @Test
+    public void testBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        // 每个桶相对误差不超过 25%
+        assertTrue(snapshot.getP50() >= 500_000 && snapshot.getP50() <= 625_000, "p50=" + snapshot.getP50());
+        assertTrue(snapshot.getP99() >= 990_000 && snapshot.getP99() <= 1_240_000, "p99=" + snapshot.getP99());
+        assertEquals(500_500_000L, snapshot.getSumNanos());
+    }
+}
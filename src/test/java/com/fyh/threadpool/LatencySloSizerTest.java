@@ -0,0 +1,87 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.LatencyHistogram;
+import com.fyh.threadpool.main.LatencySloSizer;
+import com.fyh.threadpool.main.PoolSample;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencySloSizerTest {
+
+    private static PoolSample sample(long waitMillis, int queueDepth, double utilization) {
+        LatencyHistogram wait = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            wait.record(TimeUnit.MILLISECONDS.toNanos(waitMillis));
+        }
+        LatencyHistogram.Snapshot empty = new LatencyHistogram().snapshot();
+        return new PoolSample(TimeUnit.MILLISECONDS.toNanos(100), 4, queueDepth, 100,
+                wait.snapshot(), empty, utilization);
+    }
+
+    @Test
+    public void testGrowsWhenWaitExceedsTargetAndHoldsInsideDeadband() {
+        LatencySloSizer sizer = new LatencySloSizer(10, TimeUnit.MILLISECONDS);
+        int grown = sizer.resize(sample(40, 100, 1.0), 4, 2, 32);
+        assertTrue(grown > 4, "grown to " + grown);
+
+        // 误差在 20% 的死区以内时保持不变
+        assertEquals(grown, sizer.resize(sample(10, 10, 0.9), grown, 2, 32));
+    }
+
+    @Test
+    public void testShrinksSlowlyOnlyWhenUnderutilized() {
+        LatencySloSizer sizer = new LatencySloSizer(10, TimeUnit.MILLISECONDS);
+        // 等待时间远低于目标但线程仍然繁忙，不缩容
+        for (int i = 0; i < 5; i++) {
+            assertEquals(16, sizer.resize(sample(0, 0, 0.9), 16, 2, 32));
+        }
+
+        // 利用率低时连续 3 个周期才缩容，且每次最多减少四分之一
+        assertEquals(16, sizer.resize(sample(0, 0, 0.1), 16, 2, 32));
+        assertEquals(16, sizer.resize(sample(0, 0, 0.1), 16, 2, 32));
+        int shrunk = sizer.resize(sample(0, 0, 0.1), 16, 2, 32);
+        assertTrue(shrunk < 16 && shrunk >= 12, "shrunk to " + shrunk);
+    }
+
+    @Test
+    public void testPoolFollowsSizerTarget() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 8,
+                3000, new LinkedBlockingDeque<>());
+        assertThrows(IllegalArgumentException.class,
+                () -> pool.setPoolSizer(new LatencySloSizer(1, TimeUnit.MILLISECONDS), 0, TimeUnit.MILLISECONDS));
+        pool.setPoolSizer(new LatencySloSizer(1, TimeUnit.MILLISECONDS), 20, TimeUnit.MILLISECONDS);
+
+        // 提交大量阻塞任务，排队等待远超 1ms 的目标，线程数应逐步增加到上限
+        for (int i = 0; i < 400; i++) {
+            pool.createNewWork(() -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getCurrentThreadCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(8, pool.getStats().getCurrentThreadCount());
+
+        // 任务执行完后利用率下降，线程数逐步回落到核心线程数
+        deadline = System.currentTimeMillis() + 10000;
+        while (pool.getStats().getCurrentThreadCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, pool.getStats().getCurrentThreadCount());
+        assertEquals(400, pool.getStats().getCompletedCount());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
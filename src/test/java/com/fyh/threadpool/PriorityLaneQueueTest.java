@@ -0,0 +1,137 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.PriorityLaneQueue;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityLaneQueueTest {
+
+    @Test
+    public void testHigherPriorityFirstFifoWithinLane() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(3, 0, TimeUnit.MILLISECONDS);
+        Runnable low1 = () -> {
+        };
+        Runnable low2 = () -> {
+        };
+        Runnable mid = () -> {
+        };
+        Runnable high = () -> {
+        };
+        queue.offer(low1);
+        queue.offer(mid, 1);
+        queue.offer(low2, 2);
+        queue.offer(high, 0);
+
+        assertEquals(4, queue.size());
+        assertSame(high, queue.peek());
+        assertSame(high, queue.poll());
+        assertSame(mid, queue.poll());
+        assertSame(low1, queue.poll());
+        assertSame(low2, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> queue.offer(high, 3));
+    }
+
+    @Test
+    public void testAgedLowPriorityWorkIsNotStarved() throws InterruptedException {
+        PriorityLaneQueue queue = new PriorityLaneQueue(2, 20, TimeUnit.MILLISECONDS);
+        Runnable low = () -> {
+        };
+        Runnable high = () -> {
+        };
+        queue.offer(low, 1);
+        queue.offer(high, 0);
+        assertSame(high, queue.poll());
+
+        // 低优先级任务等待超过老化时间后先于新的高优先级任务取出
+        queue.offer(high, 0);
+        Thread.sleep(30);
+        queue.offer(high, 0);
+        assertSame(low, queue.poll());
+        assertSame(high, queue.poll());
+        assertSame(high, queue.poll());
+    }
+
+    @Test
+    public void testTimedPollWaitsForWork() throws InterruptedException {
+        PriorityLaneQueue queue = new PriorityLaneQueue(2, 0, TimeUnit.MILLISECONDS);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        Runnable work = () -> {
+        };
+        new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            queue.offer(work, 1);
+        }).start();
+        assertSame(work, queue.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPriorityOutsideLanesIsRejectedUpFront() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new PriorityLaneQueue(2, 10, TimeUnit.SECONDS));
+        // 空闲线程可以直接接手时也要校验
+        assertThrows(IllegalArgumentException.class, () -> pool.createNewWork(() -> {
+        }, 2));
+        CountDownLatch release = new CountDownLatch(1);
+        pool.createNewWork(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThrows(IllegalArgumentException.class, () -> pool.createNewWork(() -> {
+        }, 2));
+        release.countDown();
+        assertEquals(1, pool.getStats().getSubmittedCount());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInteractiveWorkBypassesBacklog() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new PriorityLaneQueue(2, 10, TimeUnit.SECONDS));
+        CountDownLatch release = new CountDownLatch(1);
+        pool.createNewWork(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1001);
+        for (int i = 0; i < 1000; i++) {
+            pool.createNewWork(() -> {
+                order.add("batch");
+                done.countDown();
+            });
+        }
+        pool.createNewWork(() -> {
+            order.add("interactive");
+            done.countDown();
+        }, 0);
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("interactive", order.get(0));
+        pool.shutdown();
+    }
+}
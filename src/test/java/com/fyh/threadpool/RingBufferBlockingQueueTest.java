@@ -0,0 +1,169 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.RingBufferBlockingQueue;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import com.fyh.threadpool.main.WaitStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RingBufferBlockingQueueTest {
+
+    @Test
+    public void testBoundedFifo() throws InterruptedException {
+        RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(3);
+        // 容量向上取整为 4
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.peek());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, queue.drainTo(drained, 3));
+        assertEquals(List.of(0, 1, 2), drained);
+        assertEquals(3, queue.poll());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testAddAllClaimsBatch() {
+        RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(8);
+        assertTrue(queue.addAll(List.of(1, 2, 3, 4, 5)));
+        assertEquals(5, queue.size());
+        assertThrows(IllegalStateException.class, () -> queue.addAll(List.of(6, 7, 8, 9)));
+        // 放得下的 6、7、8 保留在队列中，9 没有放入
+        assertEquals(8, queue.size());
+        assertEquals(1, queue.poll());
+    }
+
+    @Test
+    public void testRemoveLeavesOtherElementsInOrder() {
+        RingBufferBlockingQueue<String> queue = new RingBufferBlockingQueue<>(8);
+        for (String e : List.of("a", "b", "c", "d", "e")) {
+            queue.offer(e);
+        }
+        assertTrue(queue.remove("a"));
+        assertTrue(queue.remove("c"));
+        assertFalse(queue.remove("c"));
+        assertFalse(queue.remove("x"));
+        assertEquals(List.of("b", "d", "e"), new ArrayList<>(queue));
+
+        // 队头的占位符被跳过
+        assertEquals("b", queue.peek());
+        assertEquals("b", queue.poll());
+        assertTrue(queue.remove("e"));
+        List<String> drained = new ArrayList<>();
+        assertEquals(1, queue.drainTo(drained));
+        assertEquals(List.of("d"), drained);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertFalse(queue.remove("d"));
+    }
+
+    @Test
+    public void testRemoveRacingConsumersTakesEachElementOnce() throws InterruptedException {
+        RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(1024);
+        int total = 200000;
+        AtomicLong taken = new AtomicLong();
+        AtomicLong removed = new AtomicLong();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                Integer e = i;
+                try {
+                    queue.put(e);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                // 一半元素放入后立即尝试删除，与消费者竞争
+                if (i % 2 == 0 && queue.remove(e)) {
+                    removed.incrementAndGet();
+                }
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                while (taken.get() + removed.get() < total) {
+                    if (queue.poll(10, TimeUnit.MILLISECONDS) != null) {
+                        taken.incrementAndGet();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        consumer.start();
+        producer.join(10000);
+        consumer.join(10000);
+        assertEquals(total, taken.get() + removed.get());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testMultiProducerMultiConsumer() throws InterruptedException {
+        testMultiProducerMultiConsumer(new RingBufferBlockingQueue<>(64));
+        testMultiProducerMultiConsumer(new RingBufferBlockingQueue<>(64, WaitStrategy::yielding));
+    }
+
+    private void testMultiProducerMultiConsumer(RingBufferBlockingQueue<Long> queue) throws InterruptedException {
+        int threads = 4;
+        int perProducer = 50_000;
+        AtomicLong sum = new AtomicLong();
+        CountDownLatch consumed = new CountDownLatch(threads * perProducer);
+        List<Thread> all = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            all.add(new Thread(() -> {
+                try {
+                    for (long i = 1; i <= perProducer; i++) {
+                        queue.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    while (consumed.getCount() > 0) {
+                        Long value = queue.poll(10, TimeUnit.MILLISECONDS);
+                        if (value != null) {
+                            sum.addAndGet(value);
+                            consumed.countDown();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        all.forEach(Thread::start);
+        assertTrue(consumed.await(30, TimeUnit.SECONDS));
+        for (Thread thread : all) {
+            thread.join();
+        }
+        assertEquals((long) threads * perProducer * (perProducer + 1) / 2, sum.get());
+    }
+
+    @Test
+    public void testAsWorkQueue() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 4,
+                3000, new RingBufferBlockingQueue<>(1024));
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            pool.createNewWork(done::countDown);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
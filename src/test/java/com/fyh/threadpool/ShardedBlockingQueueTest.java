@@ -0,0 +1,105 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.ShardedBlockingQueue;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedBlockingQueueTest {
+
+    @Test
+    public void testEveryElementIsPolledOnceAcrossShards() {
+        ShardedBlockingQueue<Integer> queue = new ShardedBlockingQueue<>(8, LinkedBlockingQueue::new);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(1000, queue.size());
+
+        // 主分片取空后扫描其他分片，所有元素都能取到
+        Set<Integer> seen = new HashSet<>();
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(100, queue.drainTo(drained, 100));
+        seen.addAll(drained);
+        Integer e;
+        while ((e = queue.poll()) != null) {
+            assertTrue(seen.add(e));
+        }
+        assertEquals(1000, seen.size());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testShortestOfTwoKeepsShardsBalanced() {
+        List<LinkedBlockingQueue<Integer>> shards = new ArrayList<>();
+        ShardedBlockingQueue<Integer> queue = new ShardedBlockingQueue<>(8, () -> {
+            LinkedBlockingQueue<Integer> shard = new LinkedBlockingQueue<>();
+            shards.add(shard);
+            return shard;
+        });
+        for (int i = 0; i < 8000; i++) {
+            queue.offer(i);
+        }
+        // 每次放入两个随机分片中较短的一个，各分片长度几乎相同
+        int min = shards.stream().mapToInt(LinkedBlockingQueue::size).min().getAsInt();
+        int max = shards.stream().mapToInt(LinkedBlockingQueue::size).max().getAsInt();
+        assertTrue(max - min <= 8, min + ".." + max);
+    }
+
+    @Test
+    public void testBoundedShardsSpillOverUntilAllAreFull() throws InterruptedException {
+        ShardedBlockingQueue<Integer> queue = new ShardedBlockingQueue<>(4, () -> new ArrayBlockingQueue<>(2));
+        assertEquals(8, queue.remainingCapacity());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(8));
+        assertFalse(queue.offer(8, 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+        assertTrue(queue.remove(3));
+        assertTrue(queue.offer(8));
+        assertEquals(8, queue.size());
+    }
+
+    @Test
+    public void testPoolRunsWorkFromManyProducers() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(4, 8,
+                3000, 8, LinkedBlockingQueue::new);
+        int producers = 16;
+        int perProducer = 5000;
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+        Set<Integer> ran = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    int id = base + i;
+                    pool.createNewWork(() -> {
+                        ran.add(id);
+                        done.countDown();
+                    });
+                }
+            });
+            threads[p].start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(producers * perProducer, ran.size());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,1244 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.PoolEventListener;
+import com.fyh.threadpool.main.PoolSizer;
+import com.fyh.threadpool.main.RejectionPolicy;
+import com.fyh.threadpool.main.SchedulingMode;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import com.fyh.threadpool.main.SubmitStatus;
+import com.fyh.threadpool.main.VirtualThreads;
+import com.fyh.threadpool.main.WorkFuture;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StretchableThreadPoolTest {
+
+    @Test
+    public void testWorkStealingRunsForkedWork() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(4, 4,
+                3000, new LinkedBlockingDeque<>(), SchedulingMode.WORK_STEALING);
+        int forks = 200;
+        CountDownLatch done = new CountDownLatch(forks);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        // 在线程池线程内部提交子任务，子任务进入本地队列后应被其他线程窃取执行
+        pool.createNewWork(() -> {
+            for (int i = 0; i < forks; i++) {
+                pool.createNewWork(() -> {
+                    threads.add(Thread.currentThread().getName());
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(threads.size() > 1);
+    }
+
+    @Test
+    public void testBatchSubmission() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(4, 8,
+                3000, new LinkedBlockingDeque<>());
+        int batch = 10_000;
+        CountDownLatch done = new CountDownLatch(batch);
+        List<Runnable> works = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            works.add(done::countDown);
+        }
+
+        pool.createNewWorks(works);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDrainBatchSurvivesFailingWork() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        pool.setDrainBatchSize(16);
+        int count = 1000;
+        CountDownLatch done = new CountDownLatch(count);
+        List<Runnable> works = new ArrayList<>(count + 1);
+        works.add(() -> {
+            throw new IllegalStateException("expected failure");
+        });
+        for (int i = 0; i < count; i++) {
+            works.add(done::countDown);
+        }
+
+        // 同一批中抛出异常的任务不影响后续任务执行
+        pool.createNewWorks(works);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBurstExpandsImmediately() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 8,
+                3000, new LinkedBlockingDeque<>());
+        CountDownLatch started = new CountDownLatch(8);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            pool.createNewWork(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // 8 个阻塞任务需要 8 个线程，提交时就应当扩容到位
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testThreadPerTaskBoundsConcurrency() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(0, 4, 0,
+                new LinkedBlockingDeque<>(), SchedulingMode.THREAD_PER_TASK, null);
+        int count = 100;
+        CountDownLatch done = new CountDownLatch(count);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            pool.createNewWork(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(peak.get() <= 4);
+    }
+
+    @Test
+    public void testThreadPerTaskShutdownNowWaitsForStartingThread() throws Exception {
+        AtomicReference<StretchableThreadPool> poolRef = new AtomicReference<>();
+        AtomicBoolean armed = new AtomicBoolean();
+        // 提交方取出任务的同时 shutdownNow：线程池不能在任务线程启动之前就进入 TERMINATED
+        LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<Runnable>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Runnable poll() {
+                Runnable work = super.poll();
+                if (work != null && armed.compareAndSet(true, false)) {
+                    poolRef.get().shutdownNow();
+                }
+                return work;
+            }
+        };
+        StretchableThreadPool pool = new StretchableThreadPool(0, 4, 0,
+                queue, SchedulingMode.THREAD_PER_TASK, null);
+        poolRef.set(pool);
+        AtomicBoolean terminatedWhileRunning = new AtomicBoolean();
+        CountDownLatch ran = new CountDownLatch(1);
+        armed.set(true);
+        pool.createNewWork(() -> {
+            terminatedWhileRunning.set(pool.isTerminated());
+            ran.countDown();
+        });
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(terminatedWhileRunning.get());
+    }
+
+    @Test
+    public void testVirtualThreadFactory() throws InterruptedException {
+        if (!VirtualThreads.isSupported()) {
+            assertThrows(UnsupportedOperationException.class, () -> VirtualThreads.factory("vt-"));
+            return;
+        }
+        StretchableThreadPool pool = new StretchableThreadPool(0, 10_000, 0,
+                new LinkedBlockingDeque<>(), SchedulingMode.THREAD_PER_TASK, VirtualThreads.factory("vt-"));
+        int count = 10_000;
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            pool.createNewWork(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEventListenerSeesEveryEventWithoutSampling() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        AtomicInteger submitted = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(50);
+        pool.setPoolEventListener(new PoolEventListener() {
+            @Override
+            public void onWorkSubmitted(Runnable work) {
+                submitted.incrementAndGet();
+            }
+
+            @Override
+            public void afterWork(Thread thread, Runnable work, Throwable failure) {
+                finished.countDown();
+            }
+        }, 1);
+
+        for (int i = 0; i < 50; i++) {
+            pool.createNewWork(() -> {
+            });
+        }
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(50, submitted.get());
+    }
+
+    /**
+     * 1 个线程被阻塞、容量为 2 的队列被占满的线程池
+     */
+    private static StretchableThreadPool saturatedPool(CountDownLatch release) throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>(2));
+        CountDownLatch started = new CountDownLatch(1);
+        pool.createNewWork(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        pool.createNewWork(() -> {
+        });
+        pool.createNewWork(() -> {
+        });
+        return pool;
+    }
+
+    @Test
+    public void testRejectionPolicies() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        StretchableThreadPool pool = saturatedPool(release);
+
+        RejectedExecutionException full = assertThrows(RejectedExecutionException.class, () -> pool.createNewWork(() -> {
+        }));
+        assertTrue(full.getMessage().contains("queue is full"), full.getMessage());
+        // 共享实例不能被调用方修改
+        assertThrows(IllegalStateException.class, () -> full.initCause(new RuntimeException()));
+        full.setStackTrace(new Throwable().getStackTrace());
+        assertEquals(0, full.getStackTrace().length);
+        assertNull(full.getCause());
+        assertEquals(SubmitStatus.REJECTED, pool.tryCreateNewWork(() -> {
+        }));
+
+        pool.setRejectionPolicy(RejectionPolicy.discardNewest());
+        assertEquals(SubmitStatus.DISCARDED, pool.tryCreateNewWork(() -> {
+        }));
+
+        pool.setRejectionPolicy(RejectionPolicy.blockWithTimeout(10, TimeUnit.MILLISECONDS));
+        assertEquals(SubmitStatus.REJECTED, pool.tryCreateNewWork(() -> {
+        }));
+
+        // 由提交线程自己执行
+        pool.setRejectionPolicy(RejectionPolicy.callerRuns());
+        Thread caller = Thread.currentThread();
+        AtomicInteger ranByCaller = new AtomicInteger();
+        assertEquals(SubmitStatus.CALLER_RAN, pool.tryCreateNewWork(() -> {
+            if (Thread.currentThread() == caller) {
+                ranByCaller.incrementAndGet();
+            }
+        }));
+        assertEquals(1, ranByCaller.get());
+
+        // 丢弃队列中最早的任务，新任务入队执行
+        pool.setRejectionPolicy(RejectionPolicy.discardOldest());
+        CountDownLatch newest = new CountDownLatch(1);
+        assertEquals(SubmitStatus.DISCARDED_OLDEST, pool.tryCreateNewWork(newest::countDown));
+        release.countDown();
+        assertTrue(newest.await(1, TimeUnit.SECONDS));
+
+        assertEquals(5, pool.getStats().getRejectedCount());
+    }
+
+    @Test
+    public void testBatchSubmissionIntoBoundedQueue() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        StretchableThreadPool pool = saturatedPool(release);
+        pool.setRejectionPolicy(RejectionPolicy.discardNewest());
+        List<Runnable> works = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            works.add(() -> {
+            });
+        }
+
+        // 放不下的任务按拒绝策略处理，不抛出异常
+        pool.createNewWorks(works);
+        assertEquals(4, pool.getStats().getRejectedCount());
+        release.countDown();
+    }
+
+    @Test
+    public void testSubmitReturnsResult() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 4,
+                3000, new LinkedBlockingDeque<>());
+        WorkFuture<Integer> future = pool.submit(() -> 6 * 7);
+        assertEquals(42, future.get(1, TimeUnit.SECONDS));
+
+        WorkFuture<Object> failing = pool.submit(() -> {
+            throw new IllegalStateException("expected failure");
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, failing::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testSubmitTimedGetAndCallback() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        CountDownLatch release = new CountDownLatch(1);
+        WorkFuture<String> future = pool.submit(() -> {
+            release.await();
+            return Thread.currentThread().getName();
+        });
+        assertThrows(TimeoutException.class, () -> future.get(10, TimeUnit.MILLISECONDS));
+
+        // 回调在完成任务的线程上执行
+        AtomicReference<String> callbackThread = new AtomicReference<>();
+        CountDownLatch called = new CountDownLatch(1);
+        future.whenComplete((result, failure) -> {
+            callbackThread.set(Thread.currentThread().getName());
+            called.countDown();
+        });
+        release.countDown();
+        assertTrue(called.await(1, TimeUnit.SECONDS));
+        assertEquals(future.get(), callbackThread.get());
+    }
+
+    @Test
+    public void testTimedOutWaitersAreUnlinked() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        CountDownLatch release = new CountDownLatch(1);
+        WorkFuture<String> future = pool.submit(() -> {
+            release.await();
+            return "done";
+        });
+        List<String> callbacks = new CopyOnWriteArrayList<>();
+        future.whenComplete((result, failure) -> callbacks.add("first"));
+        AtomicReference<String> waited = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                waited.set(future.get());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        // 循环超时等待不能让等待栈无限增长，回调与仍在等待的线程的节点保留
+        for (int i = 0; i < 1000; i++) {
+            assertThrows(TimeoutException.class, () -> future.get(1, TimeUnit.MICROSECONDS));
+            if (i == 500) {
+                future.whenComplete((result, failure) -> callbacks.add("second"));
+            }
+        }
+        assertEquals(3, waiterNodes(future));
+
+        release.countDown();
+        waiter.join(5000);
+        assertEquals("done", waited.get());
+        assertEquals(Arrays.asList("first", "second"), callbacks);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * WorkFuture 等待栈中的节点数
+     */
+    private static int waiterNodes(WorkFuture<?> future) throws ReflectiveOperationException {
+        Field waiters = WorkFuture.class.getDeclaredField("waiters");
+        waiters.setAccessible(true);
+        Object node = waiters.get(future);
+        int count = 0;
+        while (node != null) {
+            count++;
+            Field next = node.getClass().getDeclaredField("next");
+            next.setAccessible(true);
+            node = next.get(node);
+        }
+        return count;
+    }
+
+    @Test
+    public void testShutdownRunsQueuedWorkThenTerminates() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        int count = 100;
+        AtomicInteger finished = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            pool.execute(() -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.incrementAndGet();
+            });
+        }
+
+        pool.shutdown();
+        assertTrue(pool.isShutdown());
+        RejectedExecutionException shutdown = assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> {
+        }));
+        assertTrue(shutdown.getMessage().contains("shut down"), shutdown.getMessage());
+        // 核心线程也要退出，不能等到 maxWaitMilliseconds 超时
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(pool.isTerminated());
+        assertEquals(count, finished.get());
+        assertEquals(0, pool.getStats().getCurrentThreadCount());
+    }
+
+    @Test
+    public void testShutdownNowInterruptsAndReturnsPendingWork() throws InterruptedException {
+        for (SchedulingMode mode : SchedulingMode.values()) {
+            StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                    3000, new LinkedBlockingDeque<>(), mode, null);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch interrupted = new CountDownLatch(1);
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            });
+            Runnable pending = () -> {
+            };
+            pool.execute(pending);
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+
+            assertEquals(Arrays.asList(pending), pool.shutdownNow());
+            assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS), mode.name());
+        }
+    }
+
+    @Test
+    public void testExecutorServiceInterop() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 4,
+                3000, new LinkedBlockingDeque<>());
+        assertEquals("done", CompletableFuture.supplyAsync(() -> "done", pool).get(1, TimeUnit.SECONDS));
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            tasks.add(() -> value);
+        }
+        int sum = 0;
+        for (Future<Integer> future : pool.invokeAll(tasks)) {
+            sum += future.get();
+        }
+        assertEquals(45, sum);
+        assertTrue(pool.invokeAny(tasks) < 10);
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> pool.submit(() -> 1));
+    }
+
+    @Test
+    public void testBlockingCallsAreCompensated() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            pool.createNewWork(() -> {
+                try {
+                    StretchableThreadPool.blocking(() -> {
+                        blocked.countDown();
+                        return release.await(10, TimeUnit.SECONDS);
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // 两个线程都阻塞时 CPU 任务不再排在它们后面，而是由补偿线程执行
+        CountDownLatch quick = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            pool.createNewWork(quick::countDown);
+        }
+        assertTrue(quick.await(5, TimeUnit.SECONDS));
+        assertTrue(pool.getStats().getCurrentThreadCount() > 2);
+        assertTrue(pool.getStats().getCurrentThreadCount() <= 4);
+
+        // 阻塞结束后补偿线程退出，回到最大线程数以内
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getCurrentThreadCount() > 2 && System.currentTimeMillis() < deadline) {
+            pool.createNewWork(() -> {
+            });
+            Thread.sleep(10);
+        }
+        assertEquals(2, pool.getStats().getCurrentThreadCount());
+
+        // 不在线程池线程中调用时直接执行
+        assertEquals("direct", StretchableThreadPool.blocking(() -> "direct"));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStallWatchdogReportsAndCompensates() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        List<String> stalledThreads = new CopyOnWriteArrayList<>();
+        List<StackTraceElement[]> stacks = new CopyOnWriteArrayList<>();
+        AtomicInteger poolStalls = new AtomicInteger();
+        pool.setPoolEventListener(new PoolEventListener() {
+            @Override
+            public void onWorkStalled(Thread thread, long runningNanos, StackTraceElement[] stackTrace) {
+                stalledThreads.add(thread.getName());
+                stacks.add(stackTrace);
+            }
+
+            @Override
+            public void onPoolStalled(int stuckThreads, int queueDepth) {
+                poolStalls.incrementAndGet();
+            }
+        }, 1);
+        pool.setStallWatchdog(40, TimeUnit.MILLISECONDS, true);
+
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            pool.createNewWork(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        // 两个线程都卡住，排队任务持续增加，检测线程补充线程后这些任务得以执行
+        CountDownLatch quick = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            pool.createNewWork(quick::countDown);
+            Thread.sleep(10);
+        }
+        assertTrue(quick.await(5, TimeUnit.SECONDS));
+        assertEquals(2, stalledThreads.size());
+        assertEquals(1, poolStalls.get());
+        assertTrue(Arrays.stream(stacks.get(0)).anyMatch(e -> e.getClassName().contains("CountDownLatch")));
+
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeyedWorkRunsInOrderWithoutOverlap() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(4, 4,
+                3000, new LinkedBlockingDeque<>());
+        int keys = 8;
+        int perKey = 2000;
+        int[] next = new int[keys];
+        AtomicInteger[] running = new AtomicInteger[keys];
+        Set<String> threadsUsed = ConcurrentHashMap.newKeySet();
+        AtomicInteger violations = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(keys * perKey);
+        for (int k = 0; k < keys; k++) {
+            running[k] = new AtomicInteger();
+        }
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                int key = k;
+                int seq = i;
+                pool.createNewWork("account-" + key, () -> {
+                    // 同一个 key 不会并发，且按提交顺序执行（next 不加锁也不会出错）
+                    if (running[key].incrementAndGet() != 1 || next[key] != seq) {
+                        violations.incrementAndGet();
+                    }
+                    next[key] = seq + 1;
+                    threadsUsed.add(Thread.currentThread().getName());
+                    running[key].decrementAndGet();
+                    if (seq == 0) {
+                        throw new IllegalStateException("expected failure");
+                    }
+                    done.countDown();
+                });
+            }
+        }
+        // 每个 key 的第一个任务抛出异常，不影响后续任务
+        for (int k = 0; k < keys; k++) {
+            done.countDown();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, violations.get());
+        assertTrue(threadsUsed.size() > 1);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+        // 统计的是每个任务，而不是 key 的队列
+        assertEquals(keys * perKey, pool.getStats().getSubmittedCount());
+        assertEquals(keys * perKey - keys, pool.getStats().getCompletedCount());
+        assertEquals(keys, pool.getStats().getFailedCount());
+    }
+
+    @Test
+    public void testStallWatchdogCountsEachKeyedWork() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        List<String> stalledThreads = new CopyOnWriteArrayList<>();
+        pool.setPoolEventListener(new PoolEventListener() {
+            @Override
+            public void onWorkStalled(Thread thread, long runningNanos, StackTraceElement[] stackTrace) {
+                stalledThreads.add(thread.getName());
+            }
+        }, 1);
+        pool.setStallWatchdog(40, TimeUnit.MILLISECONDS, false);
+
+        // 同一个 key 的一批任务总共远超阈值，但每个任务都很快，不能被当成一个卡住的任务
+        CountDownLatch done = new CountDownLatch(60);
+        for (int i = 0; i < 60; i++) {
+            pool.createNewWork("key", () -> {
+                try {
+                    Thread.sleep(4);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(stalledThreads.isEmpty(), stalledThreads.toString());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeyedWorkIsRejectedAndReturnedOnShutdown() throws InterruptedException {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.createNewWork("key", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Runnable second = () -> {
+        };
+        Runnable third = () -> {
+        };
+        pool.createNewWork("key", second);
+        pool.createNewWork("other", third);
+
+        // 正在执行的 key 关闭后追加也要拒绝；shutdownNow 返回原始任务而不是 key 的队列
+        pool.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> pool.createNewWork("key", () -> {
+        }));
+        List<Runnable> pending = pool.shutdownNow();
+        assertEquals(2, pending.size());
+        assertTrue(pending.contains(second));
+        assertTrue(pending.contains(third));
+        release.countDown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getStats().getRejectedCount());
+    }
+
+    @Test
+    public void testKeyedWorkAppendedWhileQueueIsRejectedIsNotLost() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StretchableThreadPool pool = saturatedPool(release);
+        FutureTask<Void> second = new FutureTask<>(() -> {
+        }, null);
+        AtomicBoolean appended = new AtomicBoolean();
+        // 第一个提交方的 key 队列被拒绝之前，另一个线程向同一个 key 追加任务并得到 ACCEPTED
+        pool.setRejectionPolicy((work, workQueue) -> {
+            if (appended.compareAndSet(false, true)) {
+                Thread other = new Thread(() -> pool.createNewWork("key", second));
+                other.start();
+                try {
+                    other.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return SubmitStatus.REJECTED;
+        });
+        assertThrows(RejectedExecutionException.class, () -> pool.createNewWork("key", () -> {
+        }));
+        assertTrue(appended.get());
+
+        // 队列仍然是满的，追加的任务放不回去，必须被取消并计入拒绝数，而不是留在没有调度的 key 队列中
+        assertTrue(second.isCancelled());
+        assertEquals(2, pool.getStats().getRejectedCount());
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIdleWorkersReceiveHandedOffWork() throws Exception {
+        for (SchedulingMode mode : new SchedulingMode[]{SchedulingMode.SHARED_QUEUE, SchedulingMode.WORK_STEALING}) {
+            CountingDeque queue = new CountingDeque();
+            List<Thread> threads = new CopyOnWriteArrayList<>();
+            StretchableThreadPool pool = new StretchableThreadPool(4, 4, 3000, queue, mode, body -> {
+                Thread t = new Thread(body);
+                threads.add(t);
+                return t;
+            });
+            // 每次提交时线程都在空闲等待，任务直接交给它们；逐个等待完成，唤醒丢失时会超时
+            for (int i = 0; i < 2000; i++) {
+                int id = i;
+                assertEquals(id, pool.submit(() -> id).get(1, TimeUnit.SECONDS));
+            }
+            // 所有线程都挂起后再提交，任务应当直接交给空闲线程，一次也不进入队列
+            queue.offers.set(0);
+            for (int i = 0; i < 200; i++) {
+                long deadline = System.currentTimeMillis() + 1000;
+                while (!threads.stream().allMatch(t -> t.getState() == Thread.State.WAITING)
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.yield();
+                }
+                int id = i;
+                assertEquals(id, pool.submit(() -> id).get(1, TimeUnit.SECONDS));
+            }
+            assertEquals(0, queue.offers.get(), mode + ": work went through the queue");
+            // 并发提交时交接与入队混合进行
+            CountDownLatch done = new CountDownLatch(20000);
+            Thread[] producers = new Thread[4];
+            for (int p = 0; p < producers.length; p++) {
+                producers[p] = new Thread(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        pool.createNewWork(done::countDown);
+                    }
+                });
+                producers[p].start();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(4, pool.getStats().getCurrentThreadCount());
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testShutdownNowReturnsRestOfDrainedBatch() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        pool.setDrainBatchSize(8);
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.createNewWork(() -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+        // 线程忙时放入的 8 个任务下一次被一批取出，第一个任务执行时 shutdownNow
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        pool.createNewWork(() -> {
+            blocked.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 7; i++) {
+            pool.createNewWork(ran::incrementAndGet);
+        }
+        release.countDown();
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // 同一批中还没有开始的任务不再执行，由 shutdownNow 返回
+        List<Runnable> pending = pool.shutdownNow();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(7, pending.size());
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void testShutdownNowReturnsWorkHandedOffWhileWorkerTookQueuedWork() throws Exception {
+        HandoffRaceDeque queue = new HandoffRaceDeque();
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1, 3000, queue, SchedulingMode.SHARED_QUEUE);
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.createNewWork(() -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+        // 线程进入空闲等待后再次检查队列时取到 queued，与此同时另一个线程把 handedOff 直接交给它
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicReference<Future<?>> handedOff = new AtomicReference<>();
+        queue.queued = () -> {
+            blocked.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        queue.beforeSecondPoll = () -> {
+            Thread submitter = new Thread(() -> handedOff.set(pool.submit(() -> {
+            })));
+            submitter.start();
+            try {
+                submitter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        queue.step.set(1);
+        release.countDown();
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // 留到下一次执行的交接任务不能在线程退出时丢失
+        List<Runnable> pending = pool.shutdownNow();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(pending.contains(handedOff.get()), pending.toString());
+    }
+
+    /**
+     * 按步骤控制 poll 结果的队列：第 1 步返回 null，第 2 步先执行 beforeSecondPoll 再返回 queued，之后恢复正常
+     */
+    private static final class HandoffRaceDeque extends LinkedBlockingDeque<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger step = new AtomicInteger();
+        volatile Runnable queued;
+        volatile Runnable beforeSecondPoll;
+
+        @Override
+        public Runnable poll() {
+            if (step.compareAndSet(1, 2)) {
+                return null;
+            }
+            if (step.compareAndSet(2, 3)) {
+                beforeSecondPoll.run();
+                return queued;
+            }
+            return super.poll();
+        }
+    }
+
+    /**
+     * 记录放入次数的队列，用于确认任务是否经过了队列
+     */
+    private static final class CountingDeque extends LinkedBlockingDeque<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger offers = new AtomicInteger();
+
+        @Override
+        public boolean offerFirst(Runnable e) {
+            offers.incrementAndGet();
+            return super.offerFirst(e);
+        }
+
+        @Override
+        public boolean offerLast(Runnable e) {
+            offers.incrementAndGet();
+            return super.offerLast(e);
+        }
+
+        @Override
+        public void putFirst(Runnable e) throws InterruptedException {
+            offers.incrementAndGet();
+            super.putFirst(e);
+        }
+
+        @Override
+        public void putLast(Runnable e) throws InterruptedException {
+            offers.incrementAndGet();
+            super.putLast(e);
+        }
+    }
+
+    @Test
+    public void testColdIdleWorkersExpireUnderLightLoad() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 8,
+                300, new LinkedBlockingDeque<>());
+        CountDownLatch burst = new CountDownLatch(8);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            pool.createNewWork(() -> {
+                burst.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(burst.await(5, TimeUnit.SECONDS));
+        assertEquals(8, pool.getStats().getCurrentThreadCount());
+        release.countDown();
+
+        // 每 10ms 一个短任务，间隔远小于空闲超时：总是交给最近空闲的线程，栈底的线程依次超时退出
+        Set<Thread> recent = ConcurrentHashMap.newKeySet();
+        long end = System.currentTimeMillis() + 3000;
+        while (System.currentTimeMillis() < end) {
+            boolean late = end - System.currentTimeMillis() < 500;
+            pool.submit(() -> {
+                if (late) {
+                    recent.add(Thread.currentThread());
+                }
+            }).get(1, TimeUnit.SECONDS);
+            Thread.sleep(10);
+        }
+        assertTrue(pool.getStats().getCurrentThreadCount() <= 2, pool.getStats().toString());
+        assertEquals(1, recent.size());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSurplusIdleThreadsDrainToCoreTogether() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 64,
+                200, new LinkedBlockingDeque<>());
+        CountDownLatch burst = new CountDownLatch(64);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 64; i++) {
+            pool.createNewWork(() -> {
+                burst.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(burst.await(5, TimeUnit.SECONDS));
+        assertEquals(64, pool.getStats().getCurrentThreadCount());
+        release.countDown();
+
+        // 62 个多余线程几乎同时超时，各自 CAS 退出，不会一轮只退出一个，也不会低于核心线程数
+        long start = System.currentTimeMillis();
+        int lowest = Integer.MAX_VALUE;
+        while (pool.getStats().getCurrentThreadCount() > 2 && System.currentTimeMillis() - start < 3000) {
+            lowest = Math.min(lowest, pool.getStats().getCurrentThreadCount());
+            Thread.sleep(1);
+        }
+        assertEquals(2, pool.getStats().getCurrentThreadCount());
+        assertTrue(lowest >= 2);
+        assertTrue(System.currentTimeMillis() - start < 1000, (System.currentTimeMillis() - start) + "ms");
+        Thread.sleep(300);
+        assertEquals(2, pool.getStats().getCurrentThreadCount());
+        assertEquals(42, pool.submit(() -> 42).get(1, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRetiringWorkerFinishesItsLocalQueue() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 4,
+                3000, new LinkedBlockingDeque<>(), SchedulingMode.WORK_STEALING);
+        AtomicInteger target = new AtomicInteger(4);
+        pool.setPoolSizer((sample, currentTarget, minThreads, maxThreads) -> target.get(), 10, TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getCurrentThreadCount() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(4, pool.getStats().getCurrentThreadCount());
+
+        // 4 个线程都在执行任务时各自派生 100 个子任务，全部进入本地队列；之后目标线程数降到 1，多出的线程不能带着本地任务退出
+        CountDownLatch forked = new CountDownLatch(4);
+        CountDownLatch shrunk = new CountDownLatch(1);
+        CountDownLatch subtasks = new CountDownLatch(400);
+        for (int i = 0; i < 4; i++) {
+            pool.createNewWork(() -> {
+                for (int j = 0; j < 100; j++) {
+                    pool.createNewWork(subtasks::countDown);
+                }
+                forked.countDown();
+                try {
+                    shrunk.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(forked.await(5, TimeUnit.SECONDS));
+        target.set(1);
+        Thread.sleep(50);
+        shrunk.countDown();
+
+        assertTrue(subtasks.await(5, TimeUnit.SECONDS), subtasks.getCount() + " subtasks never ran");
+        deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getCurrentThreadCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, pool.getStats().getCurrentThreadCount());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRemovedPoolSizerCannotPublishStaleTarget() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 4,
+                50, new LinkedBlockingDeque<>(), SchedulingMode.SHARED_QUEUE);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pool.setPoolSizer((sample, currentTarget, minThreads, maxThreads) -> {
+            entered.countDown();
+            // 忽略 stop 的中断，模拟控制线程已经越过 stopped 检查、正在计算新目标
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                    // 继续等待
+                }
+            }
+            return maxThreads;
+        }, 10, TimeUnit.MILLISECONDS);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        pool.setPoolSizer(null, 0, TimeUnit.MILLISECONDS);
+        release.countDown();
+        Thread.sleep(100);
+        assertTrue(pool.getStats().getCurrentThreadCount() <= 1, pool.getStats().getCurrentThreadCount() + " threads");
+
+        // 移除策略后回到按空闲超时回收：扩容出的线程空闲后退回到核心线程数
+        CountDownLatch running = new CountDownLatch(4);
+        CountDownLatch finish = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            pool.createNewWork(() -> {
+                running.countDown();
+                try {
+                    finish.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        finish.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStats().getCurrentThreadCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, pool.getStats().getCurrentThreadCount());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRemovingPoolSizerRestoresLatencyTrackingSetting() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 2,
+                3000, new LinkedBlockingDeque<>(), SchedulingMode.SHARED_QUEUE);
+        PoolSizer keep = (sample, currentTarget, minThreads, maxThreads) -> currentTarget;
+        pool.setPoolSizer(keep, 10, TimeUnit.MILLISECONDS);
+        // 调节策略注册期间关闭统计不生效
+        pool.setLatencyTrackingEnabled(false);
+        runAndAwait(pool);
+        assertEquals(1, pool.getStats().getQueueWaitTime().getCount());
+
+        // 取消注册后恢复为默认的关闭
+        pool.setPoolSizer(null, 0, TimeUnit.MILLISECONDS);
+        runAndAwait(pool);
+        assertEquals(1, pool.getStats().getQueueWaitTime().getCount());
+
+        // 用户开启过统计，取消注册后仍然保持开启
+        pool.setLatencyTrackingEnabled(true);
+        pool.setPoolSizer(keep, 10, TimeUnit.MILLISECONDS);
+        pool.setPoolSizer(null, 0, TimeUnit.MILLISECONDS);
+        runAndAwait(pool);
+        assertEquals(2, pool.getStats().getQueueWaitTime().getCount());
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void runAndAwait(StretchableThreadPool pool) throws Exception {
+        WorkFuture<?> future = pool.submit(() -> { });
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testShutdownNowAfterIdleRetireReleasesSlotOnce() throws Exception {
+        GatedDeque queue = new GatedDeque();
+        StretchableThreadPool pool = new StretchableThreadPool(1, 2,
+                20, queue, SchedulingMode.SHARED_QUEUE);
+        CountDownLatch holdCore = new CountDownLatch(1);
+        CountDownLatch coreRunning = new CountDownLatch(1);
+        pool.createNewWork(() -> {
+            coreRunning.countDown();
+            try {
+                holdCore.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(coreRunning.await(5, TimeUnit.SECONDS));
+        // 核心线程忙，第二个任务由新扩容的线程执行，它执行完后成为唯一的空闲线程
+        pool.createNewWork(() -> queue.victim = Thread.currentThread());
+
+        // 空闲线程登记后检查队列时被拦住，回收线程把它标记为 RETIRE
+        assertTrue(queue.blocked.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!isRetireRequested(pool, queue.victim) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(isRetireRequested(pool, queue.victim));
+
+        // 检查队列取到一个任务：线程释放名额后执行完它再退出，执行期间线程池被 shutdownNow
+        CountDownLatch lastRunning = new CountDownLatch(1);
+        queue.last = () -> {
+            lastRunning.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        queue.release.countDown();
+        assertTrue(lastRunning.await(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getStats().getCurrentThreadCount());
+
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS), pool.getStats().toString());
+        assertEquals(0, pool.getStats().getCurrentThreadCount());
+    }
+
+    /**
+     * 回收线程是否已经要求 thread 对应的工作线程退出
+     */
+    private static boolean isRetireRequested(StretchableThreadPool pool, Thread thread) throws ReflectiveOperationException {
+        Field retire = StretchableThreadPool.class.getDeclaredField("RETIRE");
+        retire.setAccessible(true);
+        Field workers = StretchableThreadPool.class.getDeclaredField("workers");
+        workers.setAccessible(true);
+        for (Object worker : (Iterable<?>) workers.get(pool)) {
+            Field workerThread = worker.getClass().getDeclaredField("thread");
+            workerThread.setAccessible(true);
+            if (workerThread.get(worker) == thread) {
+                Field handoff = worker.getClass().getDeclaredField("handoff");
+                handoff.setAccessible(true);
+                return handoff.get(worker) == retire.get(null);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 拦住 victim 线程的第二次 poll：第一次是执行完任务后取下一个任务，第二次是登记为空闲线程之后再检查队列。
+     * 放行后返回 last
+     */
+    private static final class GatedDeque extends LinkedBlockingDeque<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile Thread victim;
+        volatile Runnable last;
+        private int victimPolls;
+
+        @Override
+        public Runnable poll() {
+            if (Thread.currentThread() != victim || ++victimPolls != 2) {
+                return super.poll();
+            }
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return last;
+        }
+    }
+
+    @Test
+    public void testReaperDoesNotSpinWithZeroIdleTimeout() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 4,
+                0, new LinkedBlockingDeque<>());
+        CountDownLatch started = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            pool.createNewWork(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 3 个多余线程都在执行任务，回收线程只能定期检查，不能空转
+        Thread reaper = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("idle-reaper")).findFirst().orElseThrow();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadCpuTime(reaper.getId());
+        Thread.sleep(500);
+        long cpuMillis = (threads.getThreadCpuTime(reaper.getId()) - before) / 1_000_000;
+        assertTrue(cpuMillis < 100, "idle-reaper used " + cpuMillis + "ms");
+
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,117 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.StretchableThreadPool;
+import com.fyh.threadpool.main.TaskGraph;
+import com.fyh.threadpool.main.WorkFuture;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskGraphTest {
+
+    @Test
+    public void testEveryNodeRunsAfterItsDependencies() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(8, 8,
+                3000, new LinkedBlockingDeque<>());
+        TaskGraph graph = new TaskGraph();
+        AtomicInteger clock = new AtomicInteger();
+        AtomicInteger violations = new AtomicInteger();
+        int size = 3000;
+        int[] finishedAt = new int[size];
+        List<TaskGraph.Node<?>> nodes = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            int id = i;
+            int[] deps = i == 0 ? new int[0] : random.ints(random.nextInt(4), 0, i).distinct().toArray();
+            TaskGraph.Node<?>[] dependencies = new TaskGraph.Node<?>[deps.length];
+            for (int j = 0; j < deps.length; j++) {
+                dependencies[j] = nodes.get(deps[j]);
+            }
+            nodes.add(graph.add(() -> {
+                int now = clock.incrementAndGet();
+                for (int dep : deps) {
+                    if (finishedAt[dep] == 0 || finishedAt[dep] >= now) {
+                        violations.incrementAndGet();
+                    }
+                }
+                finishedAt[id] = clock.incrementAndGet();
+            }, dependencies));
+        }
+
+        graph.execute(pool).get(10, TimeUnit.SECONDS);
+        assertEquals(0, violations.get());
+        assertEquals(size * 2, clock.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testResultsFlowToDependents() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node<Integer> left = graph.add(() -> 20);
+        TaskGraph.Node<Integer> right = graph.add(() -> 22);
+        TaskGraph.Node<Integer> sum = graph.add(() -> left.get() + right.get(), left, right);
+
+        graph.execute(pool).get(5, TimeUnit.SECONDS);
+        assertEquals(42, sum.get());
+        assertThrows(IllegalStateException.class, () -> graph.add(() -> 0));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFailureCancelsOnlyDependents() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        TaskGraph graph = new TaskGraph();
+        IllegalStateException failure = new IllegalStateException("expected failure");
+        TaskGraph.Node<Void> failing = graph.add(() -> {
+            throw failure;
+        });
+        TaskGraph.Node<Void> child = graph.add(() -> {
+        }, failing);
+        TaskGraph.Node<Void> grandchild = graph.add(() -> {
+        }, child);
+        TaskGraph.Node<String> independent = graph.add(() -> "ok");
+
+        WorkFuture<Void> result = graph.execute(pool);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+        assertTrue(child.isCancelled());
+        assertTrue(grandchild.isCancelled());
+        assertEquals("ok", independent.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testLongChainCancellationDoesNotOverflowStack() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node<?> previous = graph.add(() -> {
+            throw new IllegalStateException("expected failure");
+        });
+        for (int i = 0; i < 100000; i++) {
+            previous = graph.add(() -> {
+            }, previous);
+        }
+
+        WorkFuture<Void> result = graph.execute(pool);
+        assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+        assertTrue(previous.isCancelled());
+        assertFalse(result.isCancelled());
+        pool.shutdown();
+    }
+}
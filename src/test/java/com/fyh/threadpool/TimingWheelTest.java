@@ -0,0 +1,105 @@
+package com.fyh.threadpool;
+
+import com.fyh.threadpool.main.ScheduledWork;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    public void testDelayedWorkRunsInDeadlineOrderAndNeverEarly() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(2, 2,
+                3000, new LinkedBlockingDeque<>());
+        // 跨越第 0 层（512ms 以内）与第 1 层的延迟
+        long[] delays = {900, 5, 600, 300, 50};
+        List<Long> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(delays.length);
+        long start = System.nanoTime();
+        for (long delay : delays) {
+            pool.schedule(() -> {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(elapsed >= delay, "ran early: " + elapsed + " < " + delay);
+                order.add(delay);
+                done.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(5L, 50L, 300L, 600L, 900L), order);
+
+        ScheduledWork<String> result = pool.schedule(() -> "done", 10, TimeUnit.MILLISECONDS);
+        assertEquals("done", result.get(1, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCancelledWorkNeverRuns() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = pool.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+
+        Thread.sleep(150);
+        assertEquals(0, runs.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFixedRateDoesNotDriftWhenPoolIsSaturated() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        CountDownLatch release = new CountDownLatch(1);
+        pool.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AtomicInteger runs = new AtomicInteger();
+        long start = System.nanoTime();
+        ScheduledFuture<?> future = pool.scheduleAtFixedRate(runs::incrementAndGet, 0, 10, TimeUnit.MILLISECONDS);
+
+        // 唯一的线程被占用 200ms，之后错过的执行应立即补上，而不是整体往后推迟
+        Thread.sleep(200);
+        release.countDown();
+        Thread.sleep(200);
+        future.cancel(false);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long expected = elapsed / 10 + 1;
+        assertTrue(runs.get() >= expected - 3 && runs.get() <= expected + 1, runs.get() + " runs, expected " + expected);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testShutdownCancelsPendingTimers() throws Exception {
+        StretchableThreadPool pool = new StretchableThreadPool(1, 1,
+                3000, new LinkedBlockingDeque<>());
+        ScheduledFuture<?> delayed = pool.schedule(() -> {
+        }, 1, TimeUnit.HOURS);
+        ScheduledFuture<?> periodic = pool.scheduleWithFixedDelay(() -> {
+        }, 0, 1, TimeUnit.MILLISECONDS);
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(delayed.isCancelled());
+        assertTrue(periodic.isDone());
+        assertThrows(RejectedExecutionException.class, () -> pool.schedule(() -> {
+        }, 1, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,151 @@
+package com.fyh.threadpool.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基准测试公用的执行器、任务类型与完成等待工具
+ */
+public final class BenchmarkExecutors {
+
+    /**
+     * 各执行器统一使用的线程数（StretchableThreadPool 与 ThreadPoolExecutor 允许扩到两倍）
+     */
+    static final int POOL_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private BenchmarkExecutors() {
+    }
+
+    /**
+     * 参与对比的执行器
+     */
+    public enum ExecutorKind {
+        STRETCHABLE {
+            @Override
+            Executor create() {
+                quietPoolLogging();
+                return new StretchableThreadPool(POOL_THREADS, POOL_THREADS * 2,
+                        3000, new LinkedBlockingDeque<>());
+            }
+        },
+        STRETCHABLE_SHARDED {
+            @Override
+            Executor create() {
+                quietPoolLogging();
+                // 每个 CPU 一个分片，生产者线程多时不再争用同一把队列锁
+                return new StretchableThreadPool(POOL_THREADS, POOL_THREADS * 2,
+                        3000, POOL_THREADS, LinkedBlockingQueue::new);
+            }
+        },
+        THREAD_POOL_EXECUTOR {
+            @Override
+            Executor create() {
+                return new ThreadPoolExecutor(POOL_THREADS, POOL_THREADS * 2,
+                        3000, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+            }
+        },
+        FORK_JOIN_POOL {
+            @Override
+            Executor create() {
+                return new ForkJoinPool(POOL_THREADS);
+            }
+        },
+        VIRTUAL_THREAD {
+            @Override
+            Executor create() {
+                // 通过反射获取，避免项目本身依赖 JDK 21
+                try {
+                    Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                    return (Executor) factory.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new UnsupportedOperationException("virtual threads require JDK 21 or later", e);
+                }
+            }
+        };
+
+        abstract Executor create();
+    }
+
+    /**
+     * 被提交的任务类型
+     */
+    public enum TaskKind {
+        EMPTY {
+            @Override
+            void execute() {
+            }
+        },
+        CPU {
+            @Override
+            void execute() {
+                Blackhole.consumeCPU(1024);
+            }
+        },
+        SLEEP {
+            @Override
+            void execute() {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        abstract void execute();
+    }
+
+    /**
+     * 基准测试中线程池只输出 WARN 以上的日志，避免扩容、线程退出等日志混入 JMH 输出
+     */
+    static void quietPoolLogging() {
+        ((Logger) LoggerFactory.getLogger(StretchableThreadPool.class)).setLevel(Level.WARN);
+    }
+
+    static void shutdown(Executor executor) throws InterruptedException {
+        if (executor instanceof ExecutorService) {
+            ExecutorService service = (ExecutorService) executor;
+            service.shutdownNow();
+            service.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 单个生产者线程等待自己提交的一批任务全部完成
+     */
+    public static final class TaskCompletion {
+        private final AtomicInteger remaining = new AtomicInteger();
+        private volatile Thread waiter;
+
+        void expect(int count) {
+            waiter = Thread.currentThread();
+            remaining.set(count);
+        }
+
+        void done() {
+            if (remaining.decrementAndGet() == 0) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        void await() {
+            while (remaining.get() != 0) {
+                LockSupport.park(this);
+            }
+        }
+    }
+}
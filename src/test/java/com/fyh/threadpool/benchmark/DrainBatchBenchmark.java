@@ -0,0 +1,92 @@
+package com.fyh.threadpool.benchmark;
+
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.TaskCompletion;
+import com.fyh.threadpool.main.RingBufferBlockingQueue;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程批量取任务（setDrainBatchSize）对大量空任务吞吐量的影响，结果单位为 任务数/秒
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DrainBatchBenchmark {
+
+    private static final int BATCH = 4096;
+
+    public enum QueueKind {
+        LINKED_BLOCKING_DEQUE,
+        RING_BUFFER
+    }
+
+    @Param({"1", "16", "64"})
+    public int drainBatchSize;
+
+    @Param
+    public QueueKind queue;
+
+    private StretchableThreadPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkExecutors.quietPoolLogging();
+        BlockingQueue<Runnable> workQueue = queue == QueueKind.RING_BUFFER
+                ? new RingBufferBlockingQueue<>(64 * 1024)
+                : new LinkedBlockingDeque<>();
+        pool = new StretchableThreadPool(BenchmarkExecutors.POOL_THREADS, BenchmarkExecutors.POOL_THREADS,
+                3000, workQueue);
+        pool.setDrainBatchSize(drainBatchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        BenchmarkExecutors.shutdown(pool);
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final TaskCompletion completion = new TaskCompletion();
+        final List<Runnable> works = new ArrayList<>(BATCH);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Runnable work = completion::done;
+            for (int i = 0; i < BATCH; i++) {
+                works.add(work);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH)
+    public void emptyTasks(Producer producer) {
+        producer.completion.expect(BATCH);
+        pool.createNewWorks(producer.works);
+        producer.completion.await();
+    }
+}
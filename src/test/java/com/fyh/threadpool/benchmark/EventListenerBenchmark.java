@@ -0,0 +1,105 @@
+package com.fyh.threadpool.benchmark;
+
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.TaskCompletion;
+import com.fyh.threadpool.main.PoolEventListener;
+import com.fyh.threadpool.main.StretchableThreadPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 事件监听器的开销：未注册、万分之一采样、每个事件都回调三种情况下空任务的吞吐量，结果单位为 任务数/秒
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventListenerBenchmark {
+
+    private static final int BATCH = 1024;
+
+    public enum ListenerKind {
+        NONE,
+        SAMPLED_1_IN_10000,
+        EVERY_EVENT
+    }
+
+    @Param
+    public ListenerKind listener;
+
+    private StretchableThreadPool pool;
+
+    /**
+     * 只做计数的监听器，衡量的是回调机制本身的开销
+     */
+    static final class CountingListener implements PoolEventListener {
+        final LongAdder events = new LongAdder();
+
+        @Override
+        public void onWorkSubmitted(Runnable work) {
+            events.increment();
+        }
+
+        @Override
+        public void beforeWork(Thread thread, Runnable work) {
+            events.increment();
+        }
+
+        @Override
+        public void afterWork(Thread thread, Runnable work, Throwable failure) {
+            events.increment();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkExecutors.quietPoolLogging();
+        pool = new StretchableThreadPool(BenchmarkExecutors.POOL_THREADS, BenchmarkExecutors.POOL_THREADS,
+                3000, new LinkedBlockingDeque<>());
+        if (listener == ListenerKind.SAMPLED_1_IN_10000) {
+            pool.setPoolEventListener(new CountingListener(), 10_000);
+        } else if (listener == ListenerKind.EVERY_EVENT) {
+            pool.setPoolEventListener(new CountingListener(), 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        BenchmarkExecutors.shutdown(pool);
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final TaskCompletion completion = new TaskCompletion();
+        final Runnable work = completion::done;
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH)
+    public void emptyTasks(Producer producer) {
+        producer.completion.expect(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            pool.createNewWork(producer.work);
+        }
+        producer.completion.await();
+    }
+}
@@ -0,0 +1,109 @@
+package com.fyh.threadpool.benchmark;
+
+import com.fyh.threadpool.main.StretchableThreadPool;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测量大量空闲线程池的后台开销：创建若干线程池后什么也不提交，统计一段时间内所有线程消耗的 CPU 时间与上下文切换次数。
+ * 空闲时间不是 JMH 能测的指标，因此单独用 main 运行：
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.fyh.threadpool.benchmark.IdleWakeupMeasurement -Dexec.args="200 4 50 10"
+ * </pre>
+ * 参数依次为线程池数、每个线程池的核心线程数、maxWaitMilliseconds、测量秒数。上下文切换次数读取 /proc/self/task/{tid}/status，
+ * 只在 Linux 上可用
+ */
+public final class IdleWakeupMeasurement {
+
+    private IdleWakeupMeasurement() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pools = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int coreThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long maxWaitMilliseconds = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        BenchmarkExecutors.quietPoolLogging();
+        List<StretchableThreadPool> created = new ArrayList<>();
+        for (int i = 0; i < pools; i++) {
+            created.add(new StretchableThreadPool(coreThreads, coreThreads * 2,
+                    maxWaitMilliseconds, new LinkedBlockingDeque<>()));
+        }
+        // 等线程全部启动并进入空闲等待
+        TimeUnit.SECONDS.sleep(1);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuBefore = totalCpuNanos(threads);
+        long switchesBefore = contextSwitches();
+        TimeUnit.SECONDS.sleep(seconds);
+        long cpu = totalCpuNanos(threads) - cpuBefore;
+        long switches = contextSwitches() - switchesBefore;
+
+        System.out.printf("%d idle pools x %d core threads, maxWait %dms, %ds:%n",
+                pools, coreThreads, maxWaitMilliseconds, seconds);
+        System.out.printf("  cpu time          %.1f ms (%.3f ms/s)%n", cpu / 1e6, cpu / 1e6 / seconds);
+        if (switches >= 0) {
+            System.out.printf("  context switches  %d (%.1f /s)%n", switches, (double) switches / seconds);
+        } else {
+            System.out.println("  context switches  unavailable (/proc/self/task not found)");
+        }
+
+        for (StretchableThreadPool pool : created) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 所有存活线程的 CPU 时间之和，包括线程池线程与回收线程
+     */
+    private static long totalCpuNanos(ThreadMXBean threads) {
+        long total = 0;
+        for (long id : threads.getAllThreadIds()) {
+            long time = threads.getThreadCpuTime(id);
+            if (time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 进程内所有线程的主动与被动上下文切换次数之和，不支持时返回 -1
+     */
+    private static long contextSwitches() throws IOException {
+        Path tasks = Paths.get("/proc/self/task");
+        if (!Files.isDirectory(tasks)) {
+            return -1;
+        }
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tasks)) {
+            for (Path task : stream) {
+                List<String> lines;
+                try {
+                    lines = Files.readAllLines(task.resolve("status"));
+                } catch (IOException e) {
+                    // 线程刚好退出
+                    continue;
+                }
+                for (String line : lines) {
+                    if (line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:")) {
+                        total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                    }
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,111 @@
+package com.fyh.threadpool.benchmark;
+
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.ExecutorKind;
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.TaskCompletion;
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.TaskKind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提交吞吐量：每个生产者线程一次提交 BATCH 个任务并等待这批任务执行完，结果单位为 任务数/秒
+ * <p>
+ * 生产者数量分别为 1/4/16/64，对应 producers01 ~ producers64 四个方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubmissionThroughputBenchmark {
+
+    private static final int BATCH = 256;
+
+    @Param
+    public ExecutorKind executor;
+
+    @Param
+    public TaskKind task;
+
+    private Executor target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        target = executor.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        BenchmarkExecutors.shutdown(target);
+    }
+
+    /**
+     * 每个生产者线程私有的完成计数与预先创建好的任务对象，避免测量中混入分配开销
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+        final TaskCompletion completion = new TaskCompletion();
+        Runnable work;
+
+        @Setup(Level.Trial)
+        public void setUp(SubmissionThroughputBenchmark benchmark) {
+            TaskKind kind = benchmark.task;
+            work = () -> {
+                kind.execute();
+                completion.done();
+            };
+        }
+    }
+
+    private void submitBatch(Producer producer) {
+        producer.completion.expect(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            target.execute(producer.work);
+        }
+        producer.completion.await();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(BATCH)
+    public void producers01(Producer producer) {
+        submitBatch(producer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH)
+    public void producers04(Producer producer) {
+        submitBatch(producer);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @OperationsPerInvocation(BATCH)
+    public void producers16(Producer producer) {
+        submitBatch(producer);
+    }
+
+    @Benchmark
+    @Threads(64)
+    @OperationsPerInvocation(BATCH)
+    public void producers64(Producer producer) {
+        submitBatch(producer);
+    }
+}
@@ -0,0 +1,99 @@
+package com.fyh.threadpool.benchmark;
+
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.ExecutorKind;
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.TaskCompletion;
+import com.fyh.threadpool.benchmark.BenchmarkExecutors.TaskKind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端延迟：从提交一个任务到该任务执行结束的耗时分布（含 p50/p99/p999）
+ * <p>
+ * 生产者数量分别为 1/4/16/64，对应 producers01 ~ producers64 四个方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskLatencyBenchmark {
+
+    @Param
+    public ExecutorKind executor;
+
+    @Param
+    public TaskKind task;
+
+    private Executor target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        target = executor.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        BenchmarkExecutors.shutdown(target);
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final TaskCompletion completion = new TaskCompletion();
+        Runnable work;
+
+        @Setup(Level.Trial)
+        public void setUp(TaskLatencyBenchmark benchmark) {
+            TaskKind kind = benchmark.task;
+            work = () -> {
+                kind.execute();
+                completion.done();
+            };
+        }
+    }
+
+    private void submitOne(Producer producer) {
+        producer.completion.expect(1);
+        target.execute(producer.work);
+        producer.completion.await();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void producers01(Producer producer) {
+        submitOne(producer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void producers04(Producer producer) {
+        submitOne(producer);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void producers16(Producer producer) {
+        submitOne(producer);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void producers64(Producer producer) {
+        submitOne(producer);
+    }
+}